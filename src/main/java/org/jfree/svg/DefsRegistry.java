@@ -0,0 +1,182 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.awt.Paint;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry of the gradient definitions used by an {@link SVGGraphics2D}
+ * instance (and any instances created from it), or of the definitions held
+ * by an {@link SVGDefsLibrary}.  Each definition is stored against a key
+ * that describes it, together with its reference id and the markup for the
+ * DEFS element.  The markup is generated once, when the definition is
+ * registered, and written out in registration order.
+ */
+final class DefsRegistry {
+
+    /** A map from the key for each definition to its reference id. */
+    private final Map<Object, String> ids = new HashMap<>();
+
+    /** The number of definitions registered for each type prefix. */
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    /** The markup for all registered definitions. */
+    private final StringBuilder markup = new StringBuilder();
+
+    /** The paint instance that was most recently looked up or registered. */
+    private Paint lastPaint;
+
+    /** The reference id for {@code lastPaint}. */
+    private String lastId;
+
+    /**
+     * Creates a new empty registry.
+     */
+    DefsRegistry() {
+    }
+
+    /**
+     * Returns {@code true} if no definitions have been registered, and
+     * {@code false} otherwise.
+     *
+     * @return A boolean.
+     */
+    boolean isEmpty() {
+        return this.ids.isEmpty();
+    }
+
+    /**
+     * Returns the reference id if {@code paint} is the same instance that
+     * was most recently looked up or registered, and {@code null} otherwise.
+     * This avoids creating a key when the same paint is set repeatedly.
+     *
+     * @param paint  the paint ({@code null} not permitted).
+     *
+     * @return The reference id (possibly {@code null}).
+     */
+    String getCachedId(Paint paint) {
+        return paint == this.lastPaint ? this.lastId : null;
+    }
+
+    /**
+     * Returns the reference id for the paint registered with the specified
+     * key, or {@code null} if there is no such paint.  If there is, the
+     * paint instance is remembered for {@link #getCachedId(Paint)}.
+     *
+     * @param paint  the paint that the key was created from ({@code null}
+     *     not permitted).
+     * @param key  the key ({@code null} not permitted).
+     *
+     * @return The reference id (possibly {@code null}).
+     */
+    String getId(Paint paint, Object key) {
+        String id = this.ids.get(key);
+        if (id != null) {
+            this.lastPaint = paint;
+            this.lastId = id;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the reference id for the definition registered with the
+     * specified key, or {@code null} if there is no such definition.  This
+     * is used for definitions that are not paints (such as clip paths), and
+     * does not affect {@link #getCachedId(Paint)}.
+     *
+     * @param key  the key ({@code null} not permitted).
+     *
+     * @return The reference id (possibly {@code null}).
+     */
+    String getId(Object key) {
+        return this.ids.get(key);
+    }
+
+    /**
+     * Returns the number of definitions registered with the specified type
+     * prefix.
+     *
+     * @param type  the type prefix ({@code null} not permitted).
+     *
+     * @return The count.
+     */
+    int getCount(String type) {
+        return this.counts.getOrDefault(type, 0);
+    }
+
+    /**
+     * Registers a new paint definition, and remembers the paint instance
+     * for {@link #getCachedId(Paint)}.
+     *
+     * @param paint  the paint ({@code null} not permitted).
+     * @param key  the key for the paint ({@code null} not permitted).
+     * @param type  the type prefix ({@code null} not permitted).
+     * @param id  the reference id ({@code null} not permitted).
+     * @param element  the markup for the DEFS element ({@code null} not
+     *     permitted).
+     */
+    void add(Paint paint, Object key, String type, String id, String element) {
+        add(key, type, id, element);
+        this.lastPaint = paint;
+        this.lastId = id;
+    }
+
+    /**
+     * Registers a new definition that is not a paint (such as a clip path).
+     *
+     * @param key  the key for the definition ({@code null} not permitted).
+     * @param type  the type prefix ({@code null} not permitted).
+     * @param id  the reference id ({@code null} not permitted).
+     * @param element  the markup for the DEFS element ({@code null} not
+     *     permitted).
+     */
+    void add(Object key, String type, String id, String element) {
+        this.ids.put(key, id);
+        this.counts.merge(type, 1, Integer::sum);
+        this.markup.append(element);
+    }
+
+    /**
+     * Writes the markup for all registered definitions to the specified
+     * builder.
+     *
+     * @param out  the output ({@code null} not permitted).
+     */
+    void writeTo(StringBuilder out) {
+        out.append(this.markup);
+    }
+
+}
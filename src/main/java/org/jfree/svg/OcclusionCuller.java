@@ -0,0 +1,200 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the location and device space bounds of the elements that have
+ * been written to the output buffer since the last structural change (for
+ * example, the start or end of a group), so that elements which are
+ * completely covered by a later opaque fill can be removed from the buffer.
+ * At most {@link #MAX_ELEMENT_COUNT} elements are tracked.  A batch of
+ * rectangle fills (see {@link RectFillBatch}) is tracked as a single
+ * element, with the union of the bounds of its rectangles.
+ * This is used internally by {@link SVGGraphics2D} when occlusion culling is
+ * enabled.  An instance is shared by a {@code SVGGraphics2D} and its
+ * children, since they write to the same buffer.
+ */
+final class OcclusionCuller {
+
+    /**
+     * The maximum number of elements that are tracked.  When this is
+     * exceeded, the oldest half of the elements are forgotten (so they will
+     * not be removed), which keeps the cost of culling bounded.
+     */
+    static final int MAX_ELEMENT_COUNT = 1024;
+
+    /** An element in the buffer. */
+    private static final class Element {
+
+        /** The start offset. */
+        int start;
+
+        /** The end offset. */
+        int end;
+
+        /** The bounds in device space. */
+        final Rectangle2D bounds;
+
+        /**
+         * Creates a new element.
+         *
+         * @param start  the start offset.
+         * @param end  the end offset.
+         * @param bounds  the bounds in device space.
+         */
+        Element(int start, int end, Rectangle2D bounds) {
+            this.start = start;
+            this.end = end;
+            this.bounds = bounds;
+        }
+    }
+
+    /** The elements that could be removed, in the order they were written. */
+    private List<Element> elements = new ArrayList<>();
+
+    /** The start offset of the element being written (or -1). */
+    private int currentStart = -1;
+
+    /** The bounds of the element being written. */
+    private Rectangle2D currentBounds;
+
+    /**
+     * Creates a new instance.
+     */
+    OcclusionCuller() {
+    }
+
+    /**
+     * Records that an element is about to be written at the specified
+     * offset.  If the bounds are {@code null}, the element is never removed.
+     *
+     * @param offset  the offset.
+     * @param bounds  the bounds of the element in device space
+     *     ({@code null} permitted).
+     */
+    void startElement(int offset, Rectangle2D bounds) {
+        this.currentStart = bounds != null ? offset : -1;
+        this.currentBounds = bounds;
+    }
+
+    /**
+     * Records that the element being written (if any) ends at the specified
+     * offset.
+     *
+     * @param offset  the offset.
+     */
+    void endElement(int offset) {
+        if (this.currentStart >= 0 && offset > this.currentStart) {
+            this.elements.add(new Element(this.currentStart, offset,
+                    this.currentBounds));
+            if (this.elements.size() > MAX_ELEMENT_COUNT) {
+                this.elements.subList(0, MAX_ELEMENT_COUNT / 2).clear();
+            }
+        }
+        this.currentStart = -1;
+        this.currentBounds = null;
+    }
+
+    /**
+     * Forgets all the elements that have been written so far, so that they
+     * will not be removed.  This is called when anything other than an
+     * element (for example, the start or end of a group) is written.
+     */
+    void reset() {
+        this.elements.clear();
+        this.currentStart = -1;
+        this.currentBounds = null;
+    }
+
+    /**
+     * Removes the elements that lie entirely within the specified area
+     * from the buffer.  The caller must ensure that no element is being
+     * written, and that the area will be covered by an opaque fill.
+     *
+     * @param sb  the buffer ({@code null} not permitted).
+     * @param area  the area in device space ({@code null} not permitted).
+     */
+    void cull(StringBuilder sb, Rectangle2D area) {
+        List<Element> kept = new ArrayList<>(this.elements.size());
+        int runStart = -1;
+        int runEnd = -1;
+        for (int i = this.elements.size() - 1; i >= 0; i--) {
+            Element e = this.elements.get(i);
+            if (area.contains(e.bounds)) {
+                if (runStart >= 0 && e.end == runStart) {
+                    runStart = e.start;  // extend the run of removed elements
+                } else {
+                    if (runStart >= 0) {
+                        sb.delete(runStart, runEnd);
+                        shift(kept, runEnd - runStart, runEnd);
+                    }
+                    runStart = e.start;
+                    runEnd = e.end;
+                }
+            } else {
+                kept.add(e);
+            }
+        }
+        if (runStart >= 0) {
+            sb.delete(runStart, runEnd);
+            shift(kept, runEnd - runStart, runEnd);
+        }
+        List<Element> result = new ArrayList<>(kept.size());
+        for (int i = kept.size() - 1; i >= 0; i--) {
+            result.add(kept.get(i));
+        }
+        this.elements = result;
+    }
+
+    /**
+     * Shifts the elements that start at or after the specified offset.
+     *
+     * @param elements  the elements.
+     * @param delta  the number of characters removed.
+     * @param offset  the offset.
+     */
+    private static void shift(List<Element> elements, int delta, int offset) {
+        for (Element e : elements) {
+            if (e.start >= offset) {
+                e.start -= delta;
+                e.end -= delta;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Tracks the groups that have been opened via the
+ * {@link SVGHints#KEY_BEGIN_GROUP} hint, so that {@link SVGGraphics2D} can
+ * optionally remove empty unnamed groups and flatten groups that have no
+ * attributes when they are closed.  An instance is shared by a
+ * {@code SVGGraphics2D} and its children, since they write to the same
+ * buffer.
+ */
+final class OpenGroupStack {
+
+    /** An open group. */
+    private static final class Group {
+
+        /** The offset of the group's start tag. */
+        final int start;
+
+        /** The offset immediately after the group's start tag. */
+        final int contentStart;
+
+        /** Does the group have an id? */
+        final boolean named;
+
+        /** Does the group have any attributes? */
+        final boolean hasAttributes;
+
+        /** Can the group be removed or flattened? */
+        final boolean optimize;
+
+        /**
+         * Creates a new group.
+         *
+         * @param start  the offset of the start tag.
+         * @param contentStart  the offset immediately after the start tag.
+         * @param named  does the group have an id?
+         * @param hasAttributes  does the group have any attributes?
+         * @param optimize  can the group be removed or flattened?
+         */
+        Group(int start, int contentStart, boolean named,
+                boolean hasAttributes, boolean optimize) {
+            this.start = start;
+            this.contentStart = contentStart;
+            this.named = named;
+            this.hasAttributes = hasAttributes;
+            this.optimize = optimize;
+        }
+    }
+
+    /** The open groups (the innermost group is first). */
+    private final Deque<Group> groups = new ArrayDeque<>();
+
+    /**
+     * Creates a new empty stack.
+     */
+    OpenGroupStack() {
+    }
+
+    /**
+     * Records that a group has been opened.
+     *
+     * @param start  the offset of the group's start tag.
+     * @param contentStart  the offset immediately after the start tag.
+     * @param named  does the group have an id?
+     * @param hasAttributes  does the group have any attributes?
+     * @param optimize  can the group be removed or flattened when it is
+     *     closed?
+     */
+    void open(int start, int contentStart, boolean named,
+            boolean hasAttributes, boolean optimize) {
+        this.groups.push(new Group(start, contentStart, named, hasAttributes,
+                optimize));
+    }
+
+    /**
+     * Closes the innermost open group.  If the group can be optimized, it is
+     * removed from the buffer if it is empty and unnamed, or replaced by its
+     * content if it has no attributes.  Otherwise the end tag is written.
+     *
+     * @param sb  the buffer ({@code null} not permitted).
+     */
+    void close(StringBuilder sb) {
+        Group g = this.groups.poll();
+        if (g == null || !g.optimize) {
+            sb.append("</g>");
+        } else if (!g.named && sb.length() == g.contentStart) {
+            sb.setLength(g.start);
+        } else if (!g.hasAttributes) {
+            sb.delete(g.start, g.contentStart);
+        } else {
+            sb.append("</g>");
+        }
+    }
+
+}
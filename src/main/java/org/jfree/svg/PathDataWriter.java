@@ -0,0 +1,771 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+package org.jfree.svg;
+
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleFunction;
+
+/**
+ * Writes the data for the {@code d} attribute of an SVG {@code path}
+ * element.  This is used internally by {@link SVGGraphics2D}.
+ * <p>
+ * In the standard format every segment is written with an absolute command
+ * letter and comma separated coordinates (for example
+ * {@code M10.0,20.0L30.0,40.0}).  In the compact format, each segment is
+ * written using absolute or relative coordinates (whichever is shorter),
+ * {@code H} and {@code V} are used for horizontal and vertical lines,
+ * repeated command letters are omitted, separators are omitted where they
+ * are not required, and redundant zeros are removed from the numbers.
+ * <p>
+ * Optionally, runs of line-to segments can be simplified as they are
+ * written: a point is dropped when the line from the last point written to a
+ * later point passes within a tolerance of it.  This uses a sleeve-fitting
+ * test that takes constant time per point, so the simplification runs in
+ * linear time without holding the points in memory.
+ */
+final class PathDataWriter {
+
+    /** The number of coordinates for each segment type. */
+    private static final int[] COORD_COUNTS = {2, 2, 4, 6, 0};
+
+    /** The minimum number of segments in a chunk written in parallel. */
+    private static final int MIN_CHUNK_SIZE = 16384;
+
+    /** The function used to convert coordinates to strings. */
+    private final DoubleFunction<String> converter;
+
+    /** Write the compact format? */
+    private final boolean compact;
+
+    /**
+     * A flag that indicates that the converter produces strings that parse
+     * back to exactly the original value (so no parsing is required to track
+     * the current point as seen by an SVG renderer).
+     */
+    private final boolean exact;
+
+    /**
+     * The command that a renderer would assume if the next segment has no
+     * command letter (0 if a command letter is required).
+     */
+    private char impliedCommand;
+
+    /** Does the last number written end a token that needs a separator? */
+    private boolean lastWasNumber;
+
+    /** Does the last number written contain a decimal point? */
+    private boolean lastHasPoint;
+
+    /** The current point x-coordinate (as seen by an SVG renderer). */
+    private double cx;
+
+    /** The current point y-coordinate (as seen by an SVG renderer). */
+    private double cy;
+
+    /** The x-coordinate for the start of the current subpath. */
+    private double sx;
+
+    /** The y-coordinate for the start of the current subpath. */
+    private double sy;
+
+    /**
+     * The tolerance (in user space) for the simplification of runs of
+     * line-to segments, or 0.0 if no simplification is performed.
+     */
+    private final double tolerance;
+
+    /** Is a line-to segment being held back by the simplification stage? */
+    private boolean pending;
+
+    /** The x-coordinate of the line-to segment being held back. */
+    private double pendingX;
+
+    /** The y-coordinate of the line-to segment being held back. */
+    private double pendingY;
+
+    /** The x-coordinate of the last point written. */
+    private double anchorX;
+
+    /** The y-coordinate of the last point written. */
+    private double anchorY;
+
+    /** The x-coordinate of the start of the current subpath. */
+    private double startX;
+
+    /** The y-coordinate of the start of the current subpath. */
+    private double startY;
+
+    /** Has the sleeve been constrained by a point held back? */
+    private boolean sleeveOpen;
+
+    /** The reference direction for the sleeve (in radians). */
+    private double sleeveAngle;
+
+    /** The lower bound for the sleeve direction, relative to the reference. */
+    private double sleeveLower;
+
+    /** The upper bound for the sleeve direction, relative to the reference. */
+    private double sleeveUpper;
+
+    /** The largest distance from the anchor of the points held back. */
+    private double maxDistance;
+
+    /**
+     * A flag that forces the next segment to be written in absolute form
+     * with a command letter, because the current point as seen by an SVG
+     * renderer is not known (for example, at the start of a chunk that is
+     * written in parallel with earlier chunks).
+     */
+    private boolean forceAbsolute;
+
+    /**
+     * Is the start of the current subpath (as seen by an SVG renderer)
+     * known?
+     */
+    private boolean startKnown = true;
+
+    /** A work area for the absolute form of a segment. */
+    private final StringBuilder absWork = new StringBuilder();
+
+    /** A work area for the relative form of a segment. */
+    private final StringBuilder relWork = new StringBuilder();
+
+    /**
+     * Creates a new writer.
+     *
+     * @param converter  the coordinate converter ({@code null} not permitted).
+     * @param compact  write the compact format?
+     * @param exact  does the converter produce strings that parse to exactly
+     *     the original values?
+     * @param tolerance  the tolerance (in user space) for the simplification
+     *     of runs of line-to segments (0.0 for no simplification).
+     */
+    PathDataWriter(DoubleFunction<String> converter, boolean compact,
+            boolean exact, double tolerance) {
+        this.converter = converter;
+        this.compact = compact;
+        this.exact = exact;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns {@code true} if this writer simplifies runs of line-to
+     * segments, and {@code false} otherwise.
+     *
+     * @return A boolean.
+     */
+    boolean isSimplifying() {
+        return this.tolerance > 0.0;
+    }
+
+    /**
+     * Appends the path data for all the segments returned by the iterator
+     * to the specified builder.  The coordinates are read in double
+     * precision (for shapes backed by floats, this gives the same values as
+     * reading them in single precision).
+     *
+     * @param b  the builder ({@code null} not permitted).
+     * @param iterator  the path iterator ({@code null} not permitted).
+     */
+    void append(StringBuilder b, PathIterator iterator) {
+        double[] coords = new double[6];
+        while (!iterator.isDone()) {
+            writeSegment(b, iterator.currentSegment(coords), coords, 0);
+            iterator.next();
+        }
+        finish(b);
+    }
+
+    /**
+     * Appends the path data for all the segments returned by the iterator
+     * to the specified builder.  The first {@code threshold} segments are
+     * written directly (as for {@link #append(StringBuilder, PathIterator)}).
+     * Only if there are more segments than that are the remaining segments
+     * copied, split into chunks that are written in parallel (in the common
+     * {@link ForkJoinPool}) and then appended in order.  Each chunk after
+     * the first starts with an absolute command, so the output can differ
+     * from the sequential output in the form of the segments at the chunk
+     * boundaries, but not in the geometry.  The converter must be
+     * thread-safe, and no simplification is performed.
+     *
+     * @param b  the builder ({@code null} not permitted).
+     * @param iterator  the path iterator ({@code null} not permitted).
+     * @param threshold  the minimum number of segments for the data to be
+     *     written in parallel.
+     */
+    void appendInParallel(StringBuilder b, PathIterator iterator,
+            int threshold) {
+        double[] segment = new double[6];
+        for (int i = 0; i < threshold && !iterator.isDone(); i++) {
+            writeSegment(b, iterator.currentSegment(segment), segment, 0);
+            iterator.next();
+        }
+        if (iterator.isDone()) {
+            finish(b);
+            return;
+        }
+        byte[] types = new byte[1024];
+        double[] coords = new double[2048];
+        int[] offsets = new int[1024];
+        int count = 0;
+        int size = 0;
+        while (!iterator.isDone()) {
+            int type = iterator.currentSegment(segment);
+            if (count == types.length) {
+                types = Arrays.copyOf(types, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            int n = COORD_COUNTS[type];
+            if (size + n > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(coords.length * 2,
+                        size + n));
+            }
+            types[count] = (byte) type;
+            offsets[count] = size;
+            System.arraycopy(segment, 0, coords, size, n);
+            size += n;
+            count++;
+            iterator.next();
+        }
+        int chunkCount = Math.max(1, Math.min(
+                ForkJoinPool.getCommonPoolParallelism() * 4,
+                count / MIN_CHUNK_SIZE));
+        int chunkSize = (count + chunkCount - 1) / chunkCount;
+        List<ForkJoinTask<StringBuilder>> tasks = new ArrayList<>();
+        for (int start = chunkSize; start < count; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(count, start + chunkSize);
+            final byte[] t = types;
+            final int[] o = offsets;
+            final double[] c = coords;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                PathDataWriter w = new PathDataWriter(this.converter,
+                        this.compact, this.exact, 0.0);
+                w.forceAbsolute = true;
+                w.startKnown = false;
+                StringBuilder chunk = new StringBuilder((to - from) * 16);
+                w.writeSegments(chunk, t, o, c, from, to);
+                return chunk;
+            }));
+        }
+        // the first chunk continues from the segments already written
+        writeSegments(b, types, offsets, coords, 0, Math.min(count, chunkSize));
+        for (ForkJoinTask<StringBuilder> task : tasks) {
+            b.append(task.join());
+        }
+    }
+
+    /**
+     * Writes a range of segments that have been copied from a path.
+     *
+     * @param b  the builder.
+     * @param types  the segment types.
+     * @param offsets  the offset of the coordinates for each segment.
+     * @param coords  the coordinates.
+     * @param from  the index of the first segment.
+     * @param to  the index after the last segment.
+     */
+    private void writeSegments(StringBuilder b, byte[] types, int[] offsets,
+            double[] coords, int from, int to) {
+        for (int i = from; i < to; i++) {
+            writeSegment(b, types[i], coords, offsets[i]);
+        }
+        finish(b);
+    }
+
+    /**
+     * Writes a single segment.
+     *
+     * @param b  the builder.
+     * @param type  the segment type.
+     * @param coords  the coordinates.
+     * @param j  the offset of the coordinates for the segment.
+     */
+    private void writeSegment(StringBuilder b, int type, double[] coords,
+            int j) {
+        switch (type) {
+        case (PathIterator.SEG_MOVETO):
+            moveTo(b, coords[j], coords[j + 1]);
+            break;
+        case (PathIterator.SEG_LINETO):
+            lineTo(b, coords[j], coords[j + 1]);
+            break;
+        case (PathIterator.SEG_QUADTO):
+            quadTo(b, coords[j], coords[j + 1], coords[j + 2], coords[j + 3]);
+            break;
+        case (PathIterator.SEG_CUBICTO):
+            curveTo(b, coords[j], coords[j + 1], coords[j + 2], coords[j + 3],
+                    coords[j + 4], coords[j + 5]);
+            break;
+        case (PathIterator.SEG_CLOSE):
+            close(b);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Appends a move-to segment.
+     *
+     * @param b  the builder.
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    void moveTo(StringBuilder b, double x, double y) {
+        finish(b);
+        writeMoveTo(b, x, y);
+        this.startX = x;
+        this.startY = y;
+        setAnchor(x, y);
+    }
+
+    /**
+     * Appends a line-to segment.  If simplification is enabled, the point
+     * may be held back and later dropped, if the line from the last point
+     * written to a subsequent point passes within the tolerance of it.
+     *
+     * @param b  the builder.
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    void lineTo(StringBuilder b, double x, double y) {
+        if (this.tolerance <= 0.0) {
+            writeLineTo(b, x, y);
+            return;
+        }
+        if (!fitsSleeve(x, y)) {
+            writeLineTo(b, this.pendingX, this.pendingY);
+            setAnchor(this.pendingX, this.pendingY);
+            fitsSleeve(x, y);
+        }
+        this.pending = true;
+        this.pendingX = x;
+        this.pendingY = y;
+    }
+
+    /**
+     * Appends a quadratic curve segment.
+     *
+     * @param b  the builder.
+     * @param x1  the x-coordinate of the control point.
+     * @param y1  the y-coordinate of the control point.
+     * @param x2  the x-coordinate of the end point.
+     * @param y2  the y-coordinate of the end point.
+     */
+    void quadTo(StringBuilder b, double x1, double y1, double x2, double y2) {
+        finish(b);
+        writeQuadTo(b, x1, y1, x2, y2);
+        setAnchor(x2, y2);
+    }
+
+    /**
+     * Appends a cubic curve segment.
+     *
+     * @param b  the builder.
+     * @param x1  the x-coordinate of the first control point.
+     * @param y1  the y-coordinate of the first control point.
+     * @param x2  the x-coordinate of the second control point.
+     * @param y2  the y-coordinate of the second control point.
+     * @param x3  the x-coordinate of the end point.
+     * @param y3  the y-coordinate of the end point.
+     */
+    void curveTo(StringBuilder b, double x1, double y1, double x2, double y2,
+            double x3, double y3) {
+        finish(b);
+        writeCurveTo(b, x1, y1, x2, y2, x3, y3);
+        setAnchor(x3, y3);
+    }
+
+    /**
+     * Appends a close-path segment.
+     *
+     * @param b  the builder.
+     */
+    void close(StringBuilder b) {
+        finish(b);
+        writeClose(b);
+        setAnchor(this.startX, this.startY);
+    }
+
+    /**
+     * Writes the line-to segment that is being held back by the
+     * simplification stage, if there is one.  This is called automatically
+     * for all segments other than line-to segments, and at the end of
+     * {@link #append(StringBuilder, PathIterator)}.
+     *
+     * @param b  the builder.
+     */
+    void finish(StringBuilder b) {
+        if (this.pending) {
+            this.pending = false;
+            writeLineTo(b, this.pendingX, this.pendingY);
+            setAnchor(this.pendingX, this.pendingY);
+        }
+    }
+
+    /**
+     * Sets the anchor point for the simplification stage (the last point
+     * written) and resets the sleeve.
+     *
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    private void setAnchor(double x, double y) {
+        this.anchorX = x;
+        this.anchorY = y;
+        this.sleeveOpen = false;
+        this.maxDistance = 0.0;
+    }
+
+    /**
+     * Tests whether the line from the anchor point to {@code (x, y)} passes
+     * within the tolerance of every point held back since the anchor point
+     * was written and, if it does, narrows the sleeve to include the new
+     * point.  Each point at distance {@code r} from the anchor constrains
+     * the direction of the line to an angle of {@code asin(tolerance / r)}
+     * either side of the direction to the point, so the test takes constant
+     * time.
+     *
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     *
+     * @return A boolean.
+     */
+    private boolean fitsSleeve(double x, double y) {
+        double dx = x - this.anchorX;
+        double dy = y - this.anchorY;
+        double r = Math.sqrt(dx * dx + dy * dy);
+        if (r < this.maxDistance) {
+            return false; // the path turns back towards the anchor
+        }
+        this.maxDistance = r;
+        if (r <= this.tolerance) {
+            return true;
+        }
+        double angle = Math.atan2(dy, dx);
+        double halfWidth = Math.asin(this.tolerance / r);
+        if (!this.sleeveOpen) {
+            this.sleeveOpen = true;
+            this.sleeveAngle = angle;
+            this.sleeveLower = -halfWidth;
+            this.sleeveUpper = halfWidth;
+            return true;
+        }
+        double offset = angle - this.sleeveAngle;
+        if (offset > Math.PI) {
+            offset -= 2 * Math.PI;
+        } else if (offset < -Math.PI) {
+            offset += 2 * Math.PI;
+        }
+        if (offset < this.sleeveLower || offset > this.sleeveUpper) {
+            return false;
+        }
+        this.sleeveLower = Math.max(this.sleeveLower, offset - halfWidth);
+        this.sleeveUpper = Math.min(this.sleeveUpper, offset + halfWidth);
+        return true;
+    }
+
+    /**
+     * Writes a move-to segment.
+     *
+     * @param b  the builder.
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    private void writeMoveTo(StringBuilder b, double x, double y) {
+        if (!this.compact) {
+            b.append('M').append(this.converter.apply(x)).append(',')
+                    .append(this.converter.apply(y));
+            return;
+        }
+        segment(b, 'M', 'm', x, y);
+        this.sx = this.cx;
+        this.sy = this.cy;
+        this.startKnown = true;
+    }
+
+    /**
+     * Writes a line-to segment.
+     *
+     * @param b  the builder.
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    private void writeLineTo(StringBuilder b, double x, double y) {
+        if (!this.compact) {
+            b.append('L').append(this.converter.apply(x)).append(',')
+                    .append(this.converter.apply(y));
+            return;
+        }
+        String ax = number(x);
+        String ay = number(y);
+        double nx = value(ax, x);
+        double ny = value(ay, y);
+        if (this.forceAbsolute) {
+            segment(b, 'L', 'l', x, y);
+        } else if (ny == this.cy) {
+            String rx = number(x - this.cx);
+            this.cx = chooseAndAppend(b, 'H', 'h', new String[] {ax},
+                    new String[] {rx}) ? nx : this.cx + value(rx, x - this.cx);
+        } else if (nx == this.cx) {
+            String ry = number(y - this.cy);
+            this.cy = chooseAndAppend(b, 'V', 'v', new String[] {ay},
+                    new String[] {ry}) ? ny : this.cy + value(ry, y - this.cy);
+        } else {
+            segment(b, 'L', 'l', x, y);
+        }
+    }
+
+    /**
+     * Writes a quadratic curve segment.
+     *
+     * @param b  the builder.
+     * @param x1  the x-coordinate of the control point.
+     * @param y1  the y-coordinate of the control point.
+     * @param x2  the x-coordinate of the end point.
+     * @param y2  the y-coordinate of the end point.
+     */
+    private void writeQuadTo(StringBuilder b, double x1, double y1,
+            double x2, double y2) {
+        if (!this.compact) {
+            b.append('Q').append(this.converter.apply(x1))
+                    .append(',').append(this.converter.apply(y1))
+                    .append(',').append(this.converter.apply(x2))
+                    .append(',').append(this.converter.apply(y2));
+            return;
+        }
+        segment(b, 'Q', 'q', x1, y1, x2, y2);
+    }
+
+    /**
+     * Writes a cubic curve segment.
+     *
+     * @param b  the builder.
+     * @param x1  the x-coordinate of the first control point.
+     * @param y1  the y-coordinate of the first control point.
+     * @param x2  the x-coordinate of the second control point.
+     * @param y2  the y-coordinate of the second control point.
+     * @param x3  the x-coordinate of the end point.
+     * @param y3  the y-coordinate of the end point.
+     */
+    private void writeCurveTo(StringBuilder b, double x1, double y1,
+            double x2, double y2, double x3, double y3) {
+        if (!this.compact) {
+            b.append('C').append(this.converter.apply(x1)).append(',')
+                    .append(this.converter.apply(y1)).append(',')
+                    .append(this.converter.apply(x2)).append(',')
+                    .append(this.converter.apply(y2)).append(',')
+                    .append(this.converter.apply(x3)).append(',')
+                    .append(this.converter.apply(y3));
+            return;
+        }
+        segment(b, 'C', 'c', x1, y1, x2, y2, x3, y3);
+    }
+
+    /**
+     * Writes a close-path segment.
+     *
+     * @param b  the builder.
+     */
+    private void writeClose(StringBuilder b) {
+        if (!this.compact) {
+            b.append('Z');
+            return;
+        }
+        b.append('Z');
+        this.cx = this.sx;
+        this.cy = this.sy;
+        this.impliedCommand = 0;
+        this.lastWasNumber = false;
+        if (!this.startKnown) {
+            // the subpath started in an earlier chunk
+            this.forceAbsolute = true;
+        }
+    }
+
+    /**
+     * Appends a segment in the compact format, choosing between the absolute
+     * and relative forms.  The last coordinate pair is the end point of the
+     * segment, and the current point is updated accordingly.
+     *
+     * @param b  the builder.
+     * @param absCommand  the absolute command letter.
+     * @param relCommand  the relative command letter.
+     * @param xy  the coordinates (pairs of x and y values).
+     */
+    private void segment(StringBuilder b, char absCommand, char relCommand,
+            double... xy) {
+        String[] abs = new String[xy.length];
+        String[] rel = new String[xy.length];
+        for (int i = 0; i < xy.length; i += 2) {
+            abs[i] = number(xy[i]);
+            abs[i + 1] = number(xy[i + 1]);
+            rel[i] = number(xy[i] - this.cx);
+            rel[i + 1] = number(xy[i + 1] - this.cy);
+        }
+        boolean useAbs = chooseAndAppend(b, absCommand, relCommand, abs, rel);
+        int n = xy.length;
+        double x = xy[n - 2];
+        double y = xy[n - 1];
+        if (useAbs) {
+            this.cx = value(abs[n - 2], x);
+            this.cy = value(abs[n - 1], y);
+        } else {
+            this.cx += value(rel[n - 2], x - this.cx);
+            this.cy += value(rel[n - 1], y - this.cy);
+        }
+    }
+
+    /**
+     * Builds the absolute and relative forms of a segment in the work
+     * areas, and appends the shorter one to the builder.
+     *
+     * @param b  the builder.
+     * @param absCommand  the absolute command letter.
+     * @param relCommand  the relative command letter.
+     * @param abs  the numbers for the absolute form.
+     * @param rel  the numbers for the relative form.
+     *
+     * @return {@code true} if the absolute form was appended, and
+     *     {@code false} if the relative form was appended.
+     */
+    private boolean chooseAndAppend(StringBuilder b, char absCommand,
+            char relCommand, String[] abs, String[] rel) {
+        boolean useAbs;
+        if (this.forceAbsolute) {
+            this.impliedCommand = 0;
+            build(this.absWork, absCommand, abs);
+            this.forceAbsolute = false;
+            useAbs = true;
+        } else {
+            build(this.absWork, absCommand, abs);
+            build(this.relWork, relCommand, rel);
+            useAbs = this.absWork.length() <= this.relWork.length();
+        }
+        String[] numbers = useAbs ? abs : rel;
+        char command = useAbs ? absCommand : relCommand;
+        b.append(useAbs ? this.absWork : this.relWork);
+        String last = numbers[numbers.length - 1];
+        this.lastWasNumber = true;
+        this.lastHasPoint = last.indexOf('.') >= 0 && last.indexOf('E') < 0;
+        if (command == 'M') {
+            this.impliedCommand = 'L';
+        } else if (command == 'm') {
+            this.impliedCommand = 'l';
+        } else {
+            this.impliedCommand = command;
+        }
+        return useAbs;
+    }
+
+    /**
+     * Builds one form of a segment in the specified work area.
+     *
+     * @param work  the work area.
+     * @param command  the command letter.
+     * @param numbers  the numbers.
+     */
+    private void build(StringBuilder work, char command, String[] numbers) {
+        work.setLength(0);
+        boolean prevNumber = false;
+        boolean prevPoint = false;
+        if (command != this.impliedCommand) {
+            work.append(command);
+        } else {
+            prevNumber = this.lastWasNumber;
+            prevPoint = this.lastHasPoint;
+        }
+        for (String n : numbers) {
+            if (prevNumber) {
+                char first = n.charAt(0);
+                if (!(first == '-' || (first == '.' && prevPoint))) {
+                    work.append(' ');
+                }
+            }
+            work.append(n);
+            prevNumber = true;
+            prevPoint = n.indexOf('.') >= 0 && n.indexOf('E') < 0;
+        }
+    }
+
+    /**
+     * Converts a value to a string for the compact format, removing a
+     * trailing {@code ".0"} and a leading zero before the decimal point.
+     *
+     * @param d  the value.
+     *
+     * @return The string.
+     */
+    private String number(double d) {
+        String s = this.converter.apply(d);
+        if (s.endsWith(".0")) {
+            s = s.substring(0, s.length() - 2);
+        }
+        if (s.startsWith("0.")) {
+            s = s.substring(1);
+        } else if (s.startsWith("-0.")) {
+            s = "-" + s.substring(2);
+        }
+        if (s.equals("-0")) {
+            s = "0";
+        }
+        return s;
+    }
+
+    /**
+     * Returns the value that an SVG renderer will read from the string
+     * {@code s}, which was produced by converting {@code d}.
+     *
+     * @param s  the string.
+     * @param d  the original value.
+     *
+     * @return The value.
+     */
+    private double value(String s, double d) {
+        if (this.exact) {
+            return d;
+        }
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return d;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+package org.jfree.svg;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A run of rectangle fills that share the same style, transform and clip
+ * attributes.  This is used internally by {@link SVGGraphics2D} when rectangle
+ * fill batching is enabled: the rectangles are accumulated here and later
+ * written out either as a single {@code path} element or as individual
+ * {@code rect} elements, whichever is shorter.
+ */
+final class RectFillBatch {
+
+    /** The maximum number of rectangles in one batch. */
+    static final int MAX_RECT_COUNT = 1024;
+
+    /**
+     * The style, transform and clip attributes shared by all rectangles in
+     * the batch ({@code null} if the batch is empty).
+     */
+    private String attributes;
+
+    /** The number of rectangles in the batch. */
+    private int count;
+
+    /** The path data for the rectangles (used for the path element). */
+    private final StringBuilder pathData = new StringBuilder();
+
+    /** The individual rect elements. */
+    private final StringBuilder rectElements = new StringBuilder();
+
+    /**
+     * The union of the device space bounds of the rectangles, used for
+     * occlusion culling ({@code null} if the bounds of any rectangle are
+     * not known).
+     */
+    private Rectangle2D bounds;
+
+    /** Are the bounds of all the rectangles in the batch known? */
+    private boolean boundsKnown = true;
+
+    /**
+     * Creates a new empty batch.
+     */
+    RectFillBatch() {
+    }
+
+    /**
+     * Returns {@code true} if the batch is empty, and {@code false}
+     * otherwise.
+     *
+     * @return A boolean.
+     */
+    boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * Returns {@code true} if a rectangle with the specified attributes can
+     * be added to this batch.  This requires that the batch is either empty,
+     * or contains rectangles with the same attributes and has not reached the
+     * maximum size.
+     *
+     * @param attributes  the attributes ({@code null} not permitted).
+     *
+     * @return A boolean.
+     */
+    boolean canAdd(String attributes) {
+        return this.count == 0 || (this.count < MAX_RECT_COUNT
+                && this.attributes.equals(attributes));
+    }
+
+    /**
+     * Adds a rectangle to the batch.  The caller should first check that
+     * this is permitted via {@link #canAdd(String)}.
+     *
+     * @param attributes  the attributes ({@code null} not permitted).
+     * @param x  the formatted x-coordinate.
+     * @param y  the formatted y-coordinate.
+     * @param w  the formatted width (a positive value).
+     * @param h  the formatted height (a positive value).
+     * @param deviceBounds  the bounds of the rectangle in device space
+     *     ({@code null} permitted, if not known).
+     */
+    void add(String attributes, String x, String y, String w, String h,
+            Rectangle2D deviceBounds) {
+        this.attributes = attributes;
+        this.count++;
+        if (deviceBounds == null) {
+            this.boundsKnown = false;
+            this.bounds = null;
+        } else if (this.boundsKnown) {
+            if (this.bounds == null) {
+                this.bounds = (Rectangle2D) deviceBounds.clone();
+            } else {
+                this.bounds.add(deviceBounds);
+            }
+        }
+        this.pathData.append('M').append(x).append(' ').append(y)
+                .append('h').append(w).append('v').append(h)
+                .append("h-").append(w).append('z');
+        this.rectElements.append("<rect x='").append(x).append("' y='")
+                .append(y).append("' width='").append(w)
+                .append("' height='").append(h).append('\'')
+                .append(attributes).append("/>");
+    }
+
+    /**
+     * Returns the union of the device space bounds of the rectangles in the
+     * batch, or {@code null} if the batch is empty or the bounds of any
+     * rectangle are not known.
+     *
+     * @return The bounds (possibly {@code null}).
+     */
+    Rectangle2D getBounds() {
+        return this.boundsKnown ? this.bounds : null;
+    }
+
+    /**
+     * Writes the batch to the specified builder (using whichever of the two
+     * representations is shorter) and clears the batch.
+     *
+     * @param out  the output ({@code null} not permitted).
+     */
+    void writeTo(StringBuilder out) {
+        if (this.count == 0) {
+            return;
+        }
+        // "<path" + attributes + " d='" + data + "'/>"
+        int pathLength = 12 + this.attributes.length() + this.pathData.length();
+        if (pathLength < this.rectElements.length()) {
+            out.append("<path").append(this.attributes).append(" d='")
+                    .append(this.pathData).append("'/>");
+        } else {
+            out.append(this.rectElements);
+        }
+        clear();
+    }
+
+    /**
+     * Clears the batch.
+     */
+    void clear() {
+        this.attributes = null;
+        this.count = 0;
+        this.bounds = null;
+        this.boundsKnown = true;
+        this.pathData.setLength(0);
+        this.rectElements.setLength(0);
+    }
+
+}
@@ -0,0 +1,193 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.awt.Paint;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.jfree.svg.util.Args;
+import org.jfree.svg.util.PathKey;
+
+/**
+ * A library of gradient and clip path definitions that can be shared by
+ * many {@link SVGGraphics2D} instances, for example when a report embeds a
+ * large number of charts in one HTML page.  When a library is set via
+ * {@link SVGGraphics2D#setDefsLibrary(SVGDefsLibrary)}, the gradients and
+ * clip paths used by that instance are registered here (each distinct
+ * definition only once) and the SVG element for the instance contains only
+ * references to them.  The library itself is written once to the page, via
+ * {@link #getSVGElement()}.
+ * <p>
+ * The ids of the definitions are the id prefix followed by a type and a
+ * sequence number, so the same definitions registered in the same order
+ * always get the same ids.  If more than one library is written to the same
+ * page, each library must be created with a distinct id prefix.
+ * <p>
+ * This class is thread-safe, so graphics instances on different threads can
+ * register into the same library.
+ *
+ * @since 5.0.8
+ */
+public final class SVGDefsLibrary {
+
+    /** The default id prefix. */
+    static final String DEFAULT_ID_PREFIX = "_lib";
+
+    /** The prefix for the ids of the definitions in this library. */
+    private final String idPrefix;
+
+    /** The registered definitions. */
+    private final DefsRegistry registry = new DefsRegistry();
+
+    /**
+     * Creates a new empty library with the default id prefix
+     * ({@code "_lib"}).  Use {@link #SVGDefsLibrary(String)} to supply a
+     * distinct prefix when more than one library is written to the same
+     * page.
+     */
+    public SVGDefsLibrary() {
+        this(DEFAULT_ID_PREFIX);
+    }
+
+    /**
+     * Creates a new empty library with the specified id prefix.  The prefix
+     * should be distinct from the id prefix of every other library and the
+     * defs key prefix of every {@code SVGGraphics2D} instance on the same
+     * page.
+     *
+     * @param idPrefix  the id prefix ({@code null} not permitted).
+     */
+    public SVGDefsLibrary(String idPrefix) {
+        Args.nullNotPermitted(idPrefix, "idPrefix");
+        this.idPrefix = idPrefix;
+    }
+
+    /**
+     * Returns the prefix for the ids of the definitions in this library.
+     *
+     * @return The id prefix (never {@code null}).
+     */
+    public String getIdPrefix() {
+        return this.idPrefix;
+    }
+
+    /**
+     * Returns {@code true} if the library contains no definitions, and
+     * {@code false} otherwise.
+     *
+     * @return A boolean.
+     */
+    public synchronized boolean isEmpty() {
+        return this.registry.isEmpty();
+    }
+
+    /**
+     * Returns the reference id for a gradient paint, registering a new
+     * definition if an equivalent paint has not been registered before.
+     *
+     * @param paint  the paint ({@code null} not permitted).
+     * @param type  the type prefix ({@code null} not permitted).
+     * @param key  a supplier for the key for the paint ({@code null} not
+     *     permitted).
+     * @param element  a function that returns the markup for the definition
+     *     given its id ({@code null} not permitted).
+     *
+     * @return The reference id.
+     */
+    synchronized String registerGradient(Paint paint, String type,
+            Supplier<Object> key, Function<String, String> element) {
+        String id = this.registry.getCachedId(paint);
+        if (id != null) {
+            return id;
+        }
+        Object k = key.get();
+        id = this.registry.getId(paint, k);
+        if (id == null) {
+            id = this.idPrefix + type + this.registry.getCount(type);
+            this.registry.add(paint, k, type, id, element.apply(id));
+        }
+        return id;
+    }
+
+    /**
+     * Returns the reference id for a clip path, registering a new definition
+     * if a clip with the same geometry has not been registered before.
+     *
+     * @param type  the type prefix ({@code null} not permitted).
+     * @param key  the key for the clip geometry ({@code null} not permitted).
+     * @param pathData  a supplier for the attributes of the clip's path
+     *     element ({@code null} not permitted).
+     *
+     * @return The reference id.
+     */
+    synchronized String registerClip(String type, PathKey key,
+            Supplier<String> pathData) {
+        String id = this.registry.getId(key);
+        if (id == null) {
+            id = this.idPrefix + type + this.registry.getCount(type);
+            this.registry.add(key, type, id, "<clipPath id='" + id
+                    + "'><path " + pathData.get() + "/></clipPath>");
+        }
+        return id;
+    }
+
+    /**
+     * Returns a DEFS element containing all the definitions registered so
+     * far.
+     *
+     * @return The DEFS element (never {@code null}).
+     */
+    public synchronized String getDefsElement() {
+        StringBuilder b = new StringBuilder("<defs>");
+        this.registry.writeTo(b);
+        return b.append("</defs>").toString();
+    }
+
+    /**
+     * Returns an SVG element that contains the DEFS element for this
+     * library, and that takes up no space on the page.  This should be
+     * included once in the HTML page that embeds the SVG elements that
+     * refer to the library.  The element is positioned absolutely (rather
+     * than hidden with {@code display:none}) because some browsers do not
+     * render gradients defined inside an element that is not displayed.
+     *
+     * @return The SVG element (never {@code null}).
+     */
+    public String getSVGElement() {
+        return "<svg xmlns='http://www.w3.org/2000/svg' width='0' height='0'"
+                + " style='position:absolute' aria-hidden='true'>"
+                + getDefsElement() + "</svg>";
+    }
+
+}
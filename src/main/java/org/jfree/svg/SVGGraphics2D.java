@@ -45,6 +45,7 @@ import java.awt.Image;
 import java.awt.LinearGradientPaint;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.Paint;
+import java.awt.Polygon;
 import java.awt.RadialGradientPaint;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
@@ -58,7 +59,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Path2D;
@@ -66,6 +66,7 @@ import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
+import java.awt.geom.RectangularShape;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ImageObserver;
@@ -73,7 +74,11 @@ import java.awt.image.RenderedImage;
 import java.awt.image.renderable.RenderableImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedCharacterIterator.Attribute;
 import java.text.AttributedString;
@@ -87,13 +92,16 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.DoubleFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import org.jfree.svg.util.Args;
+import org.jfree.svg.util.BoundedMap;
 import org.jfree.svg.util.GradientPaintKey;
 import org.jfree.svg.util.GraphicsUtils;
 import org.jfree.svg.util.LinearGradientPaintKey;
+import org.jfree.svg.util.PathKey;
 import org.jfree.svg.util.RadialGradientPaintKey;
 
 /**
@@ -168,6 +176,50 @@ public final class SVGGraphics2D extends Graphics2D {
     /** The prefix for keys used to identify clip paths. */
     private static final String CLIP_KEY_PREFIX = "clip-";
 
+    /** The prefix for keys used to identify symbols for repeated shapes. */
+    private static final String SYMBOL_KEY_PREFIX = "sym-";
+
+    /**
+     * The maximum number of distinct shapes that are tracked when looking
+     * for repeated shapes to write as symbols.
+     */
+    private static final int MAX_SHAPE_INSTANCE_KEYS = 256;
+
+    /**
+     * The maximum number of symbols registered for repeated shapes and
+     * markers in a document.  Beyond this, shapes are written directly.
+     */
+    static final int MAX_SYMBOL_COUNT = 1024;
+
+    /**
+     * The maximum number of nested transform groups for the calls that
+     * produced the current transform.  Beyond this, a single group with the
+     * complete transform is used.
+     */
+    private static final int MAX_TRANSFORM_GROUP_DEPTH = 16;
+
+    /** The number of characters encoded at a time when updating a digest. */
+    private static final int DIGEST_CHUNK_SIZE = 8192;
+
+    /** The number of characters copied at a time when writing to a writer. */
+    private static final int WRITE_CHUNK_SIZE = 8192;
+
+    /** The maximum number of formatted color strings that are cached. */
+    private static final int MAX_COLOR_STRINGS = 64;
+
+    /**
+     * The maximum number of path segments for a shape to be considered for
+     * writing as a symbol.
+     */
+    private static final int MAX_SHAPE_INSTANCE_SEGMENTS = 32;
+
+    /**
+     * The default converter for geometry and transform values.  The strings
+     * it produces parse back to exactly the original values.
+     */
+    private static final DoubleFunction<String> DEFAULT_DOUBLE_CONVERTER
+            = SVGUtils::doubleToString;
+
     /** The width of the SVG. */
     private final double width;
 
@@ -215,34 +267,32 @@ public final class SVGGraphics2D extends Graphics2D {
      */
     String defsKeyPrefix = "_" + System.nanoTime();
 
+    /** The initial (generated) value of the defs key prefix. */
+    private final String initialDefsKeyPrefix = this.defsKeyPrefix;
+
     /**
-     * A map of all the gradients used, and the corresponding id.  When
-     * generating the SVG file, all the gradient paints used must be defined
-     * in the defs element.
+     * The registry of gradient definitions.  When generating the SVG file,
+     * all the gradient paints used must be defined in the defs element.
      */
-    private Map<GradientPaintKey, String> gradientPaints = new HashMap<>();
+    private DefsRegistry defsRegistry = new DefsRegistry();
 
     /**
-     * A map of all the linear gradients used, and the corresponding id.  When
-     * generating the SVG file, all the linear gradient paints used must be
-     * defined in the defs element.
+     * A list of the registered clip regions.  These will be written to the
+     * DEFS element.
      */
-    private Map<LinearGradientPaintKey, String> linearGradientPaints
-            = new HashMap<>();
+    private List<String> clipPaths = new ArrayList<>();
 
     /**
-     * A map of all the radial gradients used, and the corresponding id.  When
-     * generating the SVG file, all the radial gradient paints used must be
-     * defined in the defs element.
+     * A map from the geometry of each registered clip region to its index
+     * in the list of clip paths.
      */
-    private Map<RadialGradientPaintKey, String> radialGradientPaints
-            = new HashMap<>();
+    private Map<PathKey, Integer> clipPathIndices = new HashMap<>();
 
     /**
-     * A list of the registered clip regions.  These will be written to the
-     * DEFS element.
+     * The ids of the registered clip regions (in the same order as the list
+     * of clip paths).
      */
-    private List<String> clipPaths = new ArrayList<>();
+    private List<String> clipPathIds = new ArrayList<>();
 
     /**
      * The filename prefix for images that are referenced rather than
@@ -271,6 +321,12 @@ public final class SVGGraphics2D extends Graphics2D {
     /** The reference for the current clip. */
     private String clipRef;
 
+    /**
+     * The reference for the current clip when it is used in device space
+     * (for shapes with the transform folded into their coordinates).
+     */
+    private String deviceClipRef;
+
     /** The current transform. */
     private AffineTransform transform = new AffineTransform();
 
@@ -368,6 +424,174 @@ public final class SVGGraphics2D extends Graphics2D {
     /** A set of element IDs. */
     private final Set<String> elementIDs;
 
+    /**
+     * A flag that controls whether consecutive rectangle fills with the same
+     * style, transform and clip are batched into a single element.
+     */
+    private boolean batchRectFills;
+
+    /**
+     * The pending batch of rectangle fills (this is shared with child
+     * instances, since they write to the same buffer).
+     */
+    private RectFillBatch rectFillBatch;
+
+    /**
+     * A flag that controls whether repeated shapes are written once as a
+     * symbol in the DEFS element and then referenced via {@code use}
+     * elements.
+     */
+    private boolean shapeInstancing;
+
+    /**
+     * A bounded dictionary of shapes (normalised to the origin, including
+     * style) that have been seen once, but not yet registered as symbols.
+     */
+    private Map<String, Boolean> shapeInstanceKeys;
+
+    /**
+     * A map from the content of each registered symbol to its id.  Entries
+     * are kept for the life of the document, so that a shape is never
+     * registered as a symbol twice, and the number of entries is limited
+     * to {@link #MAX_SYMBOL_COUNT}.
+     */
+    private Map<String, String> symbolIds = new HashMap<>();
+
+    /**
+     * A list of the symbols for repeated shapes.  These will be written to
+     * the DEFS element.
+     */
+    private List<String> symbols = new ArrayList<>();
+
+    /** A flag that controls whether path data is written compactly. */
+    private boolean compactPathData;
+
+    /**
+     * The tolerance (in device pixels) for simplifying paths that are drawn
+     * or filled, or 0.0 if paths are not simplified.
+     */
+    private double pathSimplificationTolerance;
+
+    /**
+     * The minimum number of segments for path data to be written in
+     * parallel, or 0 if path data is always written on the calling thread.
+     */
+    private int parallelPathThreshold;
+
+    /**
+     * A flag that controls whether simple transforms (translations and
+     * uniform scaling) are applied to the coordinates of shapes, rather
+     * than written as a transform attribute.
+     */
+    private boolean transformFolding;
+
+    /**
+     * A flag that controls whether the current transform is written once
+     * as a {@code g} element that encloses the elements drawn with it,
+     * rather than as a transform attribute on every element.
+     */
+    private boolean transformGroups;
+
+    /**
+     * The state of the open transform group, if any (this is shared with
+     * child instances, since they write to the same buffer).
+     */
+    private TransformGroupState transformGroupState;
+
+    /**
+     * The last of the transform calls that produced the current transform,
+     * when transforms are written as groups ({@code null} if the transform
+     * is the identity transform, or transform groups are not enabled).
+     */
+    private TransformStep transformStep;
+
+    /**
+     * A flag that controls whether the presentation attributes shared by
+     * consecutive elements are written once on an enclosing group.
+     */
+    private boolean attributeHoisting;
+
+    /**
+     * The current run of elements with shared presentation attributes (this
+     * is shared with child instances, since they write to the same buffer).
+     */
+    private SharedAttributeRun sharedAttributeRun;
+
+    /**
+     * A flag that controls whether each path is written as a {@code path}
+     * element inside a {@code g} element that carries the attributes (the
+     * structure used by earlier releases).
+     */
+    private boolean pathGroupWrapping;
+
+    /**
+     * A flag that controls whether style properties are written in a
+     * minified form.
+     */
+    private boolean minifyStyles;
+
+    /**
+     * A bounded cache of formatted color strings, keyed by the RGB value of
+     * the color (with bit 24 set for the hexadecimal format).  This is
+     * shared with child instances.
+     */
+    private Map<Integer, String> colorStrings;
+
+    /**
+     * A flag that controls whether elements that are completely covered by
+     * a later opaque rectangle fill are removed from the output.
+     */
+    private boolean occlusionCulling;
+
+    /**
+     * The elements that could be removed by occlusion culling (this is
+     * shared with child instances, since they write to the same buffer).
+     */
+    private OcclusionCuller occlusionCuller;
+
+    /**
+     * The device space bounds of the shape that is about to be written, used
+     * for occlusion culling ({@code null} if not known).
+     */
+    private Rectangle2D elementBounds;
+
+    /**
+     * A flag that controls whether empty unnamed groups are removed and
+     * groups with no attributes are flattened.
+     */
+    private boolean groupOptimization;
+
+    /**
+     * The groups opened via the rendering hints (this is shared with child
+     * instances, since they write to the same buffer).
+     */
+    private OpenGroupStack openGroups;
+
+    /**
+     * A flag that controls whether the ids of items in the DEFS element are
+     * derived from their content (rather than numbered in order).
+     */
+    private boolean contentAddressedIds;
+
+    /**
+     * A map from content-derived ids to the corresponding content, used to
+     * resolve hash collisions (this is shared with child instances).
+     */
+    private Map<String, String> contentIds;
+
+    /**
+     * The digest that is updated with the output of the
+     * {@code getSVGElement()} methods ({@code null} permitted).
+     */
+    private MessageDigest outputDigest;
+
+    /**
+     * The shared library that gradients and clip paths are registered in
+     * ({@code null} permitted, in which case they are written to the DEFS
+     * element of this instance).
+     */
+    private SVGDefsLibrary defsLibrary;
+
     /**
      * Creates a new instance with the specified width and height.
      *
@@ -412,8 +636,8 @@ public final class SVGGraphics2D extends Graphics2D {
         this.width = width;
         this.height = height;
         this.units = units;
-        this.geomDoubleConverter = SVGUtils::doubleToString;
-        this.transformDoubleConverter = SVGUtils::doubleToString;
+        this.geomDoubleConverter = DEFAULT_DOUBLE_CONVERTER;
+        this.transformDoubleConverter = DEFAULT_DOUBLE_CONVERTER;
         this.imageElements = new ArrayList<>();
         this.fontFunction = new StandardFontFunction();
         this.zeroStrokeWidth = 0.1;
@@ -421,6 +645,14 @@ public final class SVGGraphics2D extends Graphics2D {
         this.hints = new RenderingHints(SVGHints.KEY_IMAGE_HANDLING,
                 SVGHints.VALUE_IMAGE_HANDLING_EMBED);
         this.elementIDs = new HashSet<>();
+        this.rectFillBatch = new RectFillBatch();
+        this.colorStrings = new BoundedMap<>(MAX_COLOR_STRINGS);
+        this.occlusionCuller = new OcclusionCuller();
+        this.openGroups = new OpenGroupStack();
+        this.contentIds = new HashMap<>();
+        this.transformGroupState = new TransformGroupState();
+        this.sharedAttributeRun = new SharedAttributeRun();
+        this.shapeInstanceKeys = new BoundedMap<>(MAX_SHAPE_INSTANCE_KEYS);
     }
 
     /**
@@ -436,14 +668,40 @@ public final class SVGGraphics2D extends Graphics2D {
         this.transformDoubleConverter = parent.transformDoubleConverter;
         this.geomDoubleConverter = parent.geomDoubleConverter;
         this.defsKeyPrefix = parent.defsKeyPrefix;
-        this.gradientPaints = parent.gradientPaints;
-        this.linearGradientPaints = parent.linearGradientPaints;
-        this.radialGradientPaints = parent.radialGradientPaints;
+        this.defsRegistry = parent.defsRegistry;
         this.clipPaths = parent.clipPaths;
+        this.clipPathIndices = parent.clipPathIndices;
+        this.clipPathIds = parent.clipPathIds;
         this.filePrefix = parent.filePrefix;
         this.fileSuffix = parent.fileSuffix;
         this.imageElements = parent.imageElements;
         this.zeroStrokeWidth = parent.zeroStrokeWidth;
+        this.batchRectFills = parent.batchRectFills;
+        this.rectFillBatch = parent.rectFillBatch;
+        this.shapeInstancing = parent.shapeInstancing;
+        this.shapeInstanceKeys = parent.shapeInstanceKeys;
+        this.symbolIds = parent.symbolIds;
+        this.compactPathData = parent.compactPathData;
+        this.pathSimplificationTolerance = parent.pathSimplificationTolerance;
+        this.parallelPathThreshold = parent.parallelPathThreshold;
+        this.transformFolding = parent.transformFolding;
+        this.transformGroups = parent.transformGroups;
+        this.transformStep = parent.transformStep;
+        this.transformGroupState = parent.transformGroupState;
+        this.attributeHoisting = parent.attributeHoisting;
+        this.sharedAttributeRun = parent.sharedAttributeRun;
+        this.pathGroupWrapping = parent.pathGroupWrapping;
+        this.minifyStyles = parent.minifyStyles;
+        this.colorStrings = parent.colorStrings;
+        this.occlusionCulling = parent.occlusionCulling;
+        this.occlusionCuller = parent.occlusionCuller;
+        this.groupOptimization = parent.groupOptimization;
+        this.openGroups = parent.openGroups;
+        this.contentAddressedIds = parent.contentAddressedIds;
+        this.contentIds = parent.contentIds;
+        this.outputDigest = parent.outputDigest;
+        this.defsLibrary = parent.defsLibrary;
+        this.symbols = parent.symbols;
     }
 
     /**
@@ -683,243 +941,804 @@ public final class SVGGraphics2D extends Graphics2D {
     }
 
     /**
-     * Returns the device configuration associated with this
-     * {@code Graphics2D}.
+     * Returns the flag that controls whether consecutive rectangle fills
+     * are batched.  The default value is {@code false}.
      *
-     * @return The graphics configuration.
+     * @return A boolean.
+     *
+     * @see #setBatchRectFills(boolean)
+     * @since 5.0.8
      */
-    @Override
-    public GraphicsConfiguration getDeviceConfiguration() {
-        if (this.deviceConfiguration == null) {
-            this.deviceConfiguration = new SVGGraphicsConfiguration(
-                    (int) Math.ceil(this.width), (int) Math.ceil(this.height));
-        }
-        return this.deviceConfiguration;
+    public boolean getBatchRectFills() {
+        return this.batchRectFills;
     }
 
     /**
-     * Creates a new graphics object that is a copy of this graphics object
-     * (except that it has not accumulated the drawing operations).  Not sure
-     * yet when or why this would be useful when creating SVG output.  Note
-     * that the {@code fontFunction} object ({@link #getFontFunction()}) is
-     * shared between the existing instance and the new one.
+     * Sets the flag that controls whether consecutive rectangle fills
+     * are batched.  When enabled, a run of opaque rectangle fills that share
+     * the same paint, transform and clip (typical for bar charts, heat maps
+     * and Gantt charts) is written as a single {@code path} element or as
+     * individual {@code rect} elements, whichever is shorter.  The pending
+     * run is written to the output buffer when any other content is
+     * generated, or when the SVG element is retrieved.
      *
-     * @return A new graphics object.
+     * @param batch  the new flag value.
+     *
+     * @see #getBatchRectFills()
+     * @since 5.0.8
      */
-    @Override
-    public Graphics create() {
-        SVGGraphics2D copy = new SVGGraphics2D(this);
-        copy.setRenderingHints(getRenderingHints());
-        copy.setTransform(getTransform());
-        copy.setClip(getClip());
-        copy.setPaint(getPaint());
-        copy.setColor(getColor());
-        copy.setComposite(getComposite());
-        copy.setStroke(getStroke());
-        copy.setFont(getFont());
-        copy.setBackground(getBackground());
-        copy.setFilePrefix(getFilePrefix());
-        copy.setFileSuffix(getFileSuffix());
-        return copy;
+    public void setBatchRectFills(boolean batch) {
+        this.batchRectFills = batch;
     }
 
     /**
-     * Returns the paint used to draw or fill shapes (or text).  The default
-     * value is {@link Color#BLACK}.
+     * Returns the flag that controls whether repeated shapes are written
+     * as symbols.  The default value is {@code false}.
      *
-     * @return The paint (never {@code null}).
+     * @return A boolean.
      *
-     * @see #setPaint(java.awt.Paint)
+     * @see #setShapeInstancing(boolean)
+     * @since 5.0.8
      */
-    @Override
-    public Paint getPaint() {
-        return this.paint;
+    public boolean getShapeInstancing() {
+        return this.shapeInstancing;
     }
 
     /**
-     * Sets the paint used to draw or fill shapes (or text).  If
-     * {@code paint} is an instance of {@code Color}, this method will
-     * also update the current color attribute (see {@link #getColor()}). If
-     * you pass {@code null} to this method, it does nothing (in
-     * accordance with the JDK specification).
+     * Sets the flag that controls whether repeated shapes are written as
+     * symbols.  When enabled, a small shape (such as a marker in a scatter
+     * plot) that is drawn or filled more than once with the same style,
+     * differing only by its location, is written once as a {@code symbol}
+     * in the DEFS element and each subsequent occurrence is written as a
+     * {@code use} element that references it.  The number of distinct
+     * shapes tracked is bounded, as is the number of symbols in a document
+     * (once the limit is reached, new shapes are written directly).
      *
-     * @param paint  the paint ({@code null} is permitted but ignored).
+     * @param instancing  the new flag value.
      *
-     * @see #getPaint()
+     * @see #getShapeInstancing()
+     * @since 5.0.8
      */
-    @Override
-    public void setPaint(Paint paint) {
-        if (paint == null) {
-            return;
-        }
-        this.paint = paint;
-        this.gradientPaintRef = null;
-        if (paint instanceof Color) {
-            setColor((Color) paint);
-        } else if (paint instanceof GradientPaint) {
-            GradientPaint gp = (GradientPaint) paint;
-            GradientPaintKey key = new GradientPaintKey(gp);
-            this.gradientPaintRef = this.gradientPaints.computeIfAbsent(key, k -> {
-                int count = this.gradientPaints.size();
-                String id = this.defsKeyPrefix + "gp" + count;
-                this.elementIDs.add(id);
-                return id;
-            });
-        } else if (paint instanceof LinearGradientPaint) {
-            LinearGradientPaint lgp = (LinearGradientPaint) paint;
-            LinearGradientPaintKey key = new LinearGradientPaintKey(lgp);
-            this.gradientPaintRef = this.linearGradientPaints.computeIfAbsent(key, k -> {
-                int count = this.linearGradientPaints.size();
-                String id = this.defsKeyPrefix + "lgp" + count;
-                this.elementIDs.add(id);
-                return id;
-            });
-        } else if (paint instanceof RadialGradientPaint) {
-            RadialGradientPaint rgp = (RadialGradientPaint) paint;
-            RadialGradientPaintKey key = new RadialGradientPaintKey(rgp);
-            this.gradientPaintRef = this.radialGradientPaints.computeIfAbsent(key, k -> {
-                int count = this.radialGradientPaints.size();
-                String id = this.defsKeyPrefix + "rgp" + count;
-                this.elementIDs.add(id);
-                return id;
-            });
-        }
+    public void setShapeInstancing(boolean instancing) {
+        this.shapeInstancing = instancing;
     }
 
     /**
-     * Returns the foreground color.  This method exists for backwards
-     * compatibility in AWT, you should use the {@link #getPaint()} method.
+     * Returns the flag that controls whether path data is written in a
+     * compact format.  The default value is {@code false}.
      *
-     * @return The foreground color (never {@code null}).
+     * @return A boolean.
      *
-     * @see #getPaint()
+     * @see #setCompactPathData(boolean)
+     * @since 5.0.8
      */
-    @Override
-    public Color getColor() {
-        return this.color;
+    public boolean getCompactPathData() {
+        return this.compactPathData;
     }
 
     /**
-     * Sets the foreground color.  This method exists for backwards
-     * compatibility in AWT, you should use the
-     * {@link #setPaint(java.awt.Paint)} method.
+     * Sets the flag that controls whether path data is written in a compact
+     * format.  When enabled, each path segment is written with absolute or
+     * relative coordinates (whichever is shorter), horizontal and vertical
+     * lines are written with the {@code H} and {@code V} commands, repeated
+     * command letters and unnecessary separators are omitted, and redundant
+     * zeros are removed from the numbers.  For large paths this typically
+     * reduces the size of the path data by a third or more.  Note that when
+     * a custom geometry converter is used (see
+     * {@link #setGeomDoubleConverter(DoubleFunction)}), the converted
+     * strings must be parseable by {@link Double#parseDouble(String)}.
      *
-     * @param c  the color ({@code null} permitted but ignored).
+     * @param compact  the new flag value.
      *
-     * @see #setPaint(java.awt.Paint)
+     * @see #getCompactPathData()
+     * @since 5.0.8
      */
-    @Override
-    public void setColor(Color c) {
-        if (c == null) {
-            return;
-        }
-        this.color = c;
-        this.paint = c;
+    public void setCompactPathData(boolean compact) {
+        this.compactPathData = compact;
     }
 
     /**
-     * Returns the background color.  The default value is {@link Color#BLACK}.
-     * This is used by the {@link #clearRect(int, int, int, int)} method.
+     * Returns the tolerance (in device pixels) for simplifying paths that
+     * are drawn or filled.  The default value is {@code 0.0} (no
+     * simplification).
      *
-     * @return The background color (possibly {@code null}).
+     * @return The tolerance.
      *
-     * @see #setBackground(java.awt.Color)
+     * @see #setPathSimplificationTolerance(double)
+     * @since 5.0.8
      */
-    @Override
-    public Color getBackground() {
-        return this.background;
+    public double getPathSimplificationTolerance() {
+        return this.pathSimplificationTolerance;
     }
 
     /**
-     * Sets the background color.  This is used by the
-     * {@link #clearRect(int, int, int, int)} method.  The reference
-     * implementation allows {@code null} for the background color, so
-     * we allow that too (but for that case, the clearRect method will do
-     * nothing).
+     * Sets the tolerance (in device pixels) for simplifying paths that are
+     * drawn or filled.  When the tolerance is positive, points in runs of
+     * straight line segments are dropped when the simplified line passes
+     * within the tolerance of them, measured after applying the current
+     * transform.  This is useful for paths with many more points than can
+     * be distinguished at the output resolution (for example, a long time
+     * series in a chart).  The simplification runs in linear time as the
+     * path data is written.  Curves and clip regions are not simplified.
      *
-     * @param color  the color ({@code null} permitted).
+     * @param tolerance  the tolerance (must be finite and 0.0 or greater).
      *
-     * @see #getBackground()
+     * @see #getPathSimplificationTolerance()
+     * @since 5.0.8
      */
-    @Override
-    public void setBackground(Color color) {
-        this.background = color;
+    public void setPathSimplificationTolerance(double tolerance) {
+        if (tolerance < 0.0 || !Double.isFinite(tolerance)) {
+            throw new IllegalArgumentException(
+                    "Require 'tolerance' to be finite and non-negative.");
+        }
+        this.pathSimplificationTolerance = tolerance;
     }
 
     /**
-     * Returns the current composite.
+     * Returns the minimum number of segments for the data for a path to be
+     * written in parallel.  The default value is {@code 0} (path data is
+     * always written on the calling thread).
      *
-     * @return The current composite (never {@code null}).
+     * @return The threshold.
      *
-     * @see #setComposite(java.awt.Composite)
+     * @see #setParallelPathThreshold(int)
+     * @since 5.0.8
      */
-    @Override
-    public Composite getComposite() {
-        return this.composite;
+    public int getParallelPathThreshold() {
+        return this.parallelPathThreshold;
     }
 
     /**
-     * Sets the composite (only {@code AlphaComposite} is handled).
+     * Sets the minimum number of segments for the data for a path to be
+     * written in parallel.  When a path has at least this number of
+     * segments, the segments are split into chunks that are formatted in
+     * parallel in the common {@code ForkJoinPool} and then written in
+     * order, so that very large paths are written using all the available
+     * cores.  The geometry converter (see
+     * {@link #setGeomDoubleConverter(DoubleFunction)}) must be thread-safe
+     * when this is enabled.  Paths that are simplified (see
+     * {@link #setPathSimplificationTolerance(double)}) are always written
+     * on the calling thread.
      *
-     * @param comp  the composite ({@code null} not permitted).
+     * @param threshold  the threshold (0 to disable, must not be negative).
      *
-     * @see #getComposite()
+     * @see #getParallelPathThreshold()
+     * @since 5.0.8
      */
-    @Override
-    public void setComposite(Composite comp) {
-        if (comp == null) {
-            throw new IllegalArgumentException("Null 'comp' argument.");
+    public void setParallelPathThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException(
+                    "Require 'threshold' to be non-negative.");
         }
-        this.composite = comp;
+        this.parallelPathThreshold = threshold;
     }
 
     /**
-     * Returns the current stroke (used when drawing shapes).
+     * Returns the flag that controls whether simple transforms are applied
+     * to the coordinates of shapes.  The default value is {@code false}.
      *
-     * @return The current stroke (never {@code null}).
+     * @return A boolean.
      *
-     * @see #setStroke(java.awt.Stroke)
+     * @see #setTransformFolding(boolean)
+     * @since 5.0.8
      */
-    @Override
-    public Stroke getStroke() {
-        return this.stroke;
+    public boolean getTransformFolding() {
+        return this.transformFolding;
     }
 
     /**
-     * Sets the stroke that will be used to draw shapes.
+     * Sets the flag that controls whether simple transforms are applied to
+     * the coordinates of shapes.  When enabled, and the current transform
+     * is a translation and/or a uniform (positive) scale, shapes that are
+     * drawn or filled with a {@code Color} are written with transformed
+     * coordinates (and a scaled stroke width and dash pattern) instead of a
+     * {@code transform} attribute.  Other transforms (rotation, shear,
+     * non-uniform scaling), gradient paints, text and images are written
+     * with a {@code transform} attribute as usual.  Transform folding has
+     * no effect while transform groups are enabled (the transform is then
+     * written on the enclosing group).
      *
-     * @param s  the stroke ({@code null} not permitted).
+     * @param folding  the new flag value.
      *
-     * @see #getStroke()
+     * @see #getTransformFolding()
+     * @since 5.0.8
      */
-    @Override
-    public void setStroke(Stroke s) {
-        if (s == null) {
-            throw new IllegalArgumentException("Null 's' argument.");
-        }
-        this.stroke = s;
+    public void setTransformFolding(boolean folding) {
+        this.transformFolding = folding;
     }
 
     /**
-     * Returns the current value for the specified hint.  See the
-     * {@link SVGHints} class for information about the hints that can be
-     * used with {@code SVGGraphics2D}.
-     *
-     * @param hintKey  the hint key ({@code null} permitted, but the
-     *     result will be {@code null} also).
+     * Returns the flag that controls whether transforms are written as
+     * group elements.  The default value is {@code false}.
      *
-     * @return The current value for the specified hint
-     *     (possibly {@code null}).
+     * @return A boolean.
      *
-     * @see #setRenderingHint(java.awt.RenderingHints.Key, java.lang.Object)
+     * @see #setTransformGroups(boolean)
+     * @since 5.0.8
      */
-    @Override
-    public Object getRenderingHint(RenderingHints.Key hintKey) {
-        return this.hints.get(hintKey);
+    public boolean getTransformGroups() {
+        return this.transformGroups;
     }
 
     /**
-     * Sets the value for a hint.  See the {@link SVGHints} class for
+     * Sets the flag that controls whether transforms are written as group
+     * elements.  When enabled, the elements drawn after a call to
+     * {@code translate()}, {@code scale()}, {@code rotate()},
+     * {@code shear()} or {@code transform()} are enclosed in a {@code g}
+     * element with a {@code transform} attribute for that call (for
+     * example, {@code translate(10.0,20.0)}), instead of each element having
+     * its own {@code transform} attribute.  Groups for successive calls are
+     * nested, and a group is closed when the transform changes back to its
+     * value before the call (by {@code setTransform()} or by an inverse
+     * call), or when a group, anchor or title is written via the rendering
+     * hints.  A call to {@code setTransform()} with any other transform
+     * starts a single group with the complete transform.
+     *
+     * @param groups  the new flag value.
+     *
+     * @see #getTransformGroups()
+     * @since 5.0.8
+     */
+    public void setTransformGroups(boolean groups) {
+        closeTransformGroup();
+        this.transformGroups = groups;
+        this.transformStep = null;
+        updateTransformStep(null);
+    }
+
+    /**
+     * Returns the flag that controls whether the presentation attributes
+     * shared by consecutive elements are written once on an enclosing group.
+     * The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setAttributeHoisting(boolean)
+     * @since 5.0.8
+     */
+    public boolean getAttributeHoisting() {
+        return this.attributeHoisting;
+    }
+
+    /**
+     * Sets the flag that controls whether the presentation attributes shared
+     * by consecutive elements are written once on an enclosing group.  When
+     * enabled, a run of shapes that are drawn or filled with the same style,
+     * transform and clip is written as a {@code g} element carrying those
+     * attributes, with only the geometry (and any element id) left on the
+     * shapes themselves.  The run ends when the attributes change or when
+     * anything else (text, an image, or a group via the rendering hints) is
+     * written.
+     *
+     * @param hoisting  the new flag value.
+     *
+     * @see #getAttributeHoisting()
+     * @since 5.0.8
+     */
+    public void setAttributeHoisting(boolean hoisting) {
+        flushPendingOutput();
+        this.attributeHoisting = hoisting;
+    }
+
+    /**
+     * Returns the flag that controls whether paths are wrapped in a group
+     * element.  The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setPathGroupWrapping(boolean)
+     * @since 5.0.8
+     */
+    public boolean getPathGroupWrapping() {
+        return this.pathGroupWrapping;
+    }
+
+    /**
+     * Sets the flag that controls whether paths are wrapped in a group
+     * element.  By default, each path that is drawn or filled is written as
+     * a single {@code path} element carrying the id, style, transform and
+     * clip-path attributes.  Set this flag to {@code true} to write these
+     * attributes on an enclosing {@code g} element instead, which is the
+     * structure used by releases before 5.0.8 (this doubles the number of
+     * elements, so should only be used for compatibility with code that
+     * relies on the old structure).
+     *
+     * @param wrapping  the new flag value.
+     *
+     * @see #getPathGroupWrapping()
+     * @since 5.0.8
+     */
+    public void setPathGroupWrapping(boolean wrapping) {
+        this.pathGroupWrapping = wrapping;
+    }
+
+    /**
+     * Returns the flag that controls whether style properties are written in
+     * a minified form.  The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setMinifyStyles(boolean)
+     * @since 5.0.8
+     */
+    public boolean getMinifyStyles() {
+        return this.minifyStyles;
+    }
+
+    /**
+     * Sets the flag that controls whether style properties are written in a
+     * minified form.  When enabled, the stroke, fill and font styles omit
+     * properties that have the SVG default value ({@code stroke-width:1} and
+     * opacities of {@code 1}), numbers are written without a redundant
+     * fractional part or leading zero, colors (including gradient stop
+     * colors) are written in hexadecimal notation ({@code #rgb} where
+     * possible, otherwise {@code #rrggbb}) and style declarations contain no
+     * whitespace.  Since the omitted properties are inherited in SVG, this
+     * mode should not be used when content is drawn inside a group (via
+     * {@link SVGHints#KEY_BEGIN_GROUP}) that sets these properties to other
+     * values.
+     *
+     * @param minify  the new flag value.
+     *
+     * @see #getMinifyStyles()
+     * @since 5.0.8
+     */
+    public void setMinifyStyles(boolean minify) {
+        this.minifyStyles = minify;
+    }
+
+    /**
+     * Returns the flag that controls whether elements that are completely
+     * covered by a later opaque rectangle fill are removed from the output.
+     * The default value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setOcclusionCulling(boolean)
+     * @since 5.0.8
+     */
+    public boolean getOcclusionCulling() {
+        return this.occlusionCulling;
+    }
+
+    /**
+     * Sets the flag that controls whether elements that are completely
+     * covered by a later opaque rectangle fill are removed from the output.
+     * When enabled, filling a rectangle (for example, via
+     * {@link #clearRect(int, int, int, int)}) with an opaque {@code Color},
+     * with no clip and a transform that does not rotate or shear, removes
+     * the shapes drawn or filled earlier that lie entirely within the
+     * rectangle.  This keeps the output size bounded for instances that are
+     * repeatedly cleared and redrawn.  Only shapes written since the last
+     * group, anchor or title (via the rendering hints) are removed, and
+     * text and images are never removed.  A batch of rectangle fills (see
+     * {@link #setBatchRectFills(boolean)}) is removed only if all of its
+     * rectangles are covered, and only the most recent shapes (up to a
+     * fixed limit) are candidates for removal.  Occlusion culling has no
+     * effect while transform groups or attribute hoisting are enabled.
+     *
+     * @param culling  the new flag value.
+     *
+     * @see #getOcclusionCulling()
+     * @since 5.0.8
+     */
+    public void setOcclusionCulling(boolean culling) {
+        flushPendingOutput();
+        this.occlusionCuller.reset();
+        this.occlusionCulling = culling;
+    }
+
+    /**
+     * Returns the flag that controls whether empty unnamed groups are
+     * removed and groups with no attributes are flattened.  The default
+     * value is {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setGroupOptimization(boolean)
+     * @since 5.0.8
+     */
+    public boolean getGroupOptimization() {
+        return this.groupOptimization;
+    }
+
+    /**
+     * Sets the flag that controls whether empty unnamed groups are removed
+     * and groups with no attributes are flattened.  When enabled, a group
+     * opened via {@link SVGHints#KEY_BEGIN_GROUP} is checked when it is
+     * closed: if nothing was written inside it and it has no id, it is
+     * removed, and if it has no attributes at all, it is replaced by its
+     * content.  In addition, text is not wrapped in a {@code g} element
+     * unless the group has an id or transform.  The setting applies to
+     * groups that are opened after it is changed.
+     *
+     * @param optimization  the new flag value.
+     *
+     * @see #getGroupOptimization()
+     * @since 5.0.8
+     */
+    public void setGroupOptimization(boolean optimization) {
+        this.groupOptimization = optimization;
+    }
+
+    /**
+     * Returns the flag that controls whether the ids of items in the DEFS
+     * element are derived from their content.  The default value is
+     * {@code false}.
+     *
+     * @return A boolean.
+     *
+     * @see #setContentAddressedIds(boolean)
+     * @since 5.0.8
+     */
+    public boolean getContentAddressedIds() {
+        return this.contentAddressedIds;
+    }
+
+    /**
+     * Sets the flag that controls whether the ids of items in the DEFS
+     * element (gradients, clip paths and symbols) are derived from their
+     * content.  When enabled, each id is the defs key prefix followed by the
+     * item type and a short hash of the item's content, and the default
+     * defs key prefix (which is based on {@code System.nanoTime()}) is
+     * replaced by {@code "_"}.  Identical drawing operations then produce
+     * byte-identical output, and when several SVG elements are included in
+     * one HTML page, two items can only share an id if they have the same
+     * content.  If required, this must be set immediately after
+     * construction (before any content generation methods have been
+     * called), and before any call to {@link #setDefsKeyPrefix(String)}.
+     *
+     * @param contentAddressed  the new flag value.
+     *
+     * @see #getContentAddressedIds()
+     * @since 5.0.8
+     */
+    public void setContentAddressedIds(boolean contentAddressed) {
+        if (contentAddressed && this.defsKeyPrefix.equals(
+                this.initialDefsKeyPrefix)) {
+            this.defsKeyPrefix = "_";
+        }
+        this.contentAddressedIds = contentAddressed;
+    }
+
+    /**
+     * Returns the digest that is updated with the output of the
+     * {@code getSVGElement()} methods.  The default value is {@code null}.
+     *
+     * @return The digest (possibly {@code null}).
+     *
+     * @see #setOutputDigest(MessageDigest)
+     * @since 5.0.8
+     */
+    public MessageDigest getOutputDigest() {
+        return this.outputDigest;
+    }
+
+    /**
+     * Sets the digest that is updated with the output of the
+     * {@code getSVGElement()} methods.  When a digest is set, each call to
+     * {@link #getSVGElement(String, boolean, ViewBox, PreserveAspectRatio,
+     * MeetOrSlice)} (and the other methods that delegate to it, including
+     * {@link #getSVGDocument()}) resets the digest and then updates it with
+     * the UTF-8 encoding of the SVG element.  The caller can then use
+     * {@code digest.digest()} to obtain the hash (for example, for an HTTP
+     * {@code ETag}) without encoding and hashing the returned string in a
+     * separate step.  Note that this is a pass over the finished output at
+     * the time the element is requested, not a streaming tap: the output
+     * buffer can still change after content is written (for example, with
+     * occlusion culling or attribute hoisting), so the digest cannot be
+     * updated as drawing proceeds.  Any {@code MessageDigest}
+     * implementation can be used, including non-cryptographic hashes
+     * supplied by a security provider.
+     *
+     * @param digest  the digest ({@code null} permitted).
+     *
+     * @see #getOutputDigest()
+     * @since 5.0.8
+     */
+    public void setOutputDigest(MessageDigest digest) {
+        this.outputDigest = digest;
+    }
+
+    /**
+     * Returns the shared library that gradients and clip paths are
+     * registered in.  The default value is {@code null}.
+     *
+     * @return The library (possibly {@code null}).
+     *
+     * @see #setDefsLibrary(SVGDefsLibrary)
+     * @since 5.0.8
+     */
+    public SVGDefsLibrary getDefsLibrary() {
+        return this.defsLibrary;
+    }
+
+    /**
+     * Sets the shared library that gradients and clip paths are registered
+     * in.  When a library is set, the SVG element for this instance refers
+     * to the definitions in the library instead of including its own copies,
+     * so the library's element (see {@link SVGDefsLibrary#getSVGElement()})
+     * must be included in the same HTML page.  Several instances (on any
+     * thread) can share one library, so that each definition is written to
+     * the page only once.  If required, this must be set immediately after
+     * construction (before any content generation methods have been
+     * called).
+     *
+     * @param library  the library ({@code null} permitted).
+     *
+     * @see #getDefsLibrary()
+     * @since 5.0.8
+     */
+    public void setDefsLibrary(SVGDefsLibrary library) {
+        this.defsLibrary = library;
+    }
+
+    /**
+     * Returns the device configuration associated with this
+     * {@code Graphics2D}.
+     *
+     * @return The graphics configuration.
+     */
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        if (this.deviceConfiguration == null) {
+            this.deviceConfiguration = new SVGGraphicsConfiguration(
+                    (int) Math.ceil(this.width), (int) Math.ceil(this.height));
+        }
+        return this.deviceConfiguration;
+    }
+
+    /**
+     * Creates a new graphics object that is a copy of this graphics object
+     * (except that it has not accumulated the drawing operations).  Not sure
+     * yet when or why this would be useful when creating SVG output.  Note
+     * that the {@code fontFunction} object ({@link #getFontFunction()}) is
+     * shared between the existing instance and the new one.
+     *
+     * @return A new graphics object.
+     */
+    @Override
+    public Graphics create() {
+        SVGGraphics2D copy = new SVGGraphics2D(this);
+        copy.setRenderingHints(getRenderingHints());
+        copy.setTransform(getTransform());
+        copy.setClip(getClip());
+        copy.setPaint(getPaint());
+        copy.setColor(getColor());
+        copy.setComposite(getComposite());
+        copy.setStroke(getStroke());
+        copy.setFont(getFont());
+        copy.setBackground(getBackground());
+        copy.setFilePrefix(getFilePrefix());
+        copy.setFileSuffix(getFileSuffix());
+        return copy;
+    }
+
+    /**
+     * Returns the paint used to draw or fill shapes (or text).  The default
+     * value is {@link Color#BLACK}.
+     *
+     * @return The paint (never {@code null}).
+     *
+     * @see #setPaint(java.awt.Paint)
+     */
+    @Override
+    public Paint getPaint() {
+        return this.paint;
+    }
+
+    /**
+     * Sets the paint used to draw or fill shapes (or text).  If
+     * {@code paint} is an instance of {@code Color}, this method will
+     * also update the current color attribute (see {@link #getColor()}). If
+     * you pass {@code null} to this method, it does nothing (in
+     * accordance with the JDK specification).
+     *
+     * @param paint  the paint ({@code null} is permitted but ignored).
+     *
+     * @see #getPaint()
+     */
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint == null) {
+            return;
+        }
+        this.paint = paint;
+        this.gradientPaintRef = null;
+        if (paint instanceof Color) {
+            setColor((Color) paint);
+        } else if (paint instanceof GradientPaint
+                || paint instanceof LinearGradientPaint
+                || paint instanceof RadialGradientPaint) {
+            this.gradientPaintRef = registerGradientPaint(paint);
+        }
+    }
+
+    /**
+     * Returns the reference id for the specified gradient paint, registering
+     * a new definition (and generating its markup) if an equivalent paint has
+     * not been used before.
+     *
+     * @param paint  the gradient paint ({@code null} not permitted).
+     *
+     * @return The reference id.
+     */
+    private String registerGradientPaint(Paint paint) {
+        String type = paint instanceof GradientPaint ? "gp"
+                : paint instanceof LinearGradientPaint ? "lgp" : "rgp";
+        if (this.defsLibrary != null) {
+            return this.defsLibrary.registerGradient(paint, type,
+                    () -> createGradientPaintKey(paint),
+                    id -> getGradientElement(id, paint));
+        }
+        String id = this.defsRegistry.getCachedId(paint);
+        if (id != null) {
+            return id;
+        }
+        Object key = createGradientPaintKey(paint);
+        id = this.defsRegistry.getId(paint, key);
+        if (id == null) {
+            id = createDefsId(type, this.defsRegistry.getCount(type),
+                    () -> getGradientElement("", paint));
+            this.defsRegistry.add(paint, key, type, id,
+                    getGradientElement(id, paint));
+            this.elementIDs.add(id);
+        }
+        return id;
+    }
+
+    /**
+     * Creates a key for the specified gradient paint, which must be an
+     * instance of {@code GradientPaint}, {@code LinearGradientPaint} or
+     * {@code RadialGradientPaint}.
+     *
+     * @param paint  the gradient paint ({@code null} not permitted).
+     *
+     * @return The key.
+     */
+    private static Object createGradientPaintKey(Paint paint) {
+        if (paint instanceof GradientPaint) {
+            return new GradientPaintKey((GradientPaint) paint);
+        } else if (paint instanceof LinearGradientPaint) {
+            return new LinearGradientPaintKey((LinearGradientPaint) paint);
+        }
+        return new RadialGradientPaintKey((RadialGradientPaint) paint);
+    }
+
+    /**
+     * Returns the foreground color.  This method exists for backwards
+     * compatibility in AWT, you should use the {@link #getPaint()} method.
+     *
+     * @return The foreground color (never {@code null}).
+     *
+     * @see #getPaint()
+     */
+    @Override
+    public Color getColor() {
+        return this.color;
+    }
+
+    /**
+     * Sets the foreground color.  This method exists for backwards
+     * compatibility in AWT, you should use the
+     * {@link #setPaint(java.awt.Paint)} method.
+     *
+     * @param c  the color ({@code null} permitted but ignored).
+     *
+     * @see #setPaint(java.awt.Paint)
+     */
+    @Override
+    public void setColor(Color c) {
+        if (c == null) {
+            return;
+        }
+        this.color = c;
+        this.paint = c;
+    }
+
+    /**
+     * Returns the background color.  The default value is {@link Color#BLACK}.
+     * This is used by the {@link #clearRect(int, int, int, int)} method.
+     *
+     * @return The background color (possibly {@code null}).
+     *
+     * @see #setBackground(java.awt.Color)
+     */
+    @Override
+    public Color getBackground() {
+        return this.background;
+    }
+
+    /**
+     * Sets the background color.  This is used by the
+     * {@link #clearRect(int, int, int, int)} method.  The reference
+     * implementation allows {@code null} for the background color, so
+     * we allow that too (but for that case, the clearRect method will do
+     * nothing).
+     *
+     * @param color  the color ({@code null} permitted).
+     *
+     * @see #getBackground()
+     */
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    /**
+     * Returns the current composite.
+     *
+     * @return The current composite (never {@code null}).
+     *
+     * @see #setComposite(java.awt.Composite)
+     */
+    @Override
+    public Composite getComposite() {
+        return this.composite;
+    }
+
+    /**
+     * Sets the composite (only {@code AlphaComposite} is handled).
+     *
+     * @param comp  the composite ({@code null} not permitted).
+     *
+     * @see #getComposite()
+     */
+    @Override
+    public void setComposite(Composite comp) {
+        if (comp == null) {
+            throw new IllegalArgumentException("Null 'comp' argument.");
+        }
+        this.composite = comp;
+    }
+
+    /**
+     * Returns the current stroke (used when drawing shapes).
+     *
+     * @return The current stroke (never {@code null}).
+     *
+     * @see #setStroke(java.awt.Stroke)
+     */
+    @Override
+    public Stroke getStroke() {
+        return this.stroke;
+    }
+
+    /**
+     * Sets the stroke that will be used to draw shapes.
+     *
+     * @param s  the stroke ({@code null} not permitted).
+     *
+     * @see #getStroke()
+     */
+    @Override
+    public void setStroke(Stroke s) {
+        if (s == null) {
+            throw new IllegalArgumentException("Null 's' argument.");
+        }
+        this.stroke = s;
+    }
+
+    /**
+     * Returns the current value for the specified hint.  See the
+     * {@link SVGHints} class for information about the hints that can be
+     * used with {@code SVGGraphics2D}.
+     *
+     * @param hintKey  the hint key ({@code null} permitted, but the
+     *     result will be {@code null} also).
+     *
+     * @return The current value for the specified hint
+     *     (possibly {@code null}).
+     *
+     * @see #setRenderingHint(java.awt.RenderingHints.Key, java.lang.Object)
+     */
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+        return this.hints.get(hintKey);
+    }
+
+    /**
+     * Sets the value for a hint.  See the {@link SVGHints} class for
      * information about the hints that can be used with this implementation.
      *
      * @param hintKey  the hint key ({@code null} not permitted).
@@ -956,6 +1775,8 @@ public final class SVGGraphics2D extends Graphics2D {
                    otherKeysAndValues.add(e);
                 }
             }
+            prepareForNonElement();
+            int start = this.sb.length();
             this.sb.append("<g");
             if (groupId != null) {
                 if (this.elementIDs.contains(groupId)) {
@@ -978,13 +1799,18 @@ public final class SVGGraphics2D extends Graphics2D {
                }
             }
             this.sb.append('>');
+            this.openGroups.open(start, this.sb.length(), groupId != null,
+                    this.sb.length() > start + 3, this.groupOptimization);
         } else if (SVGHints.isEndGroupKey(hintKey)) {
-            this.sb.append("</g>");
+            prepareForNonElement();
+            this.openGroups.close(this.sb);
         } else if (SVGHints.isElementTitleKey(hintKey) && (hintValue != null)) {
+            prepareForNonElement();
             this.sb.append("<title>");
             this.sb.append(SVGUtils.escapeForXML(String.valueOf(hintValue)));
             this.sb.append("</title>");
         } else if (SVGHints.KEY_BEGIN_ANCHOR.equals(hintKey) && hintValue != null) {
+            prepareForNonElement();
             if (hintValue instanceof URL) {
                 this.sb.append("<a href='").append(hintValue.toString()).append("'>");
             } else if (hintValue instanceof Map) {
@@ -1004,6 +1830,7 @@ public final class SVGGraphics2D extends Graphics2D {
 		}
 	    }
 	} else if (SVGHints.KEY_END_ANCHOR.equals(hintKey)) {
+	    prepareForNonElement();
 	    this.sb.append("</a>");
         } else {
             this.hints.put(hintKey, hintValue);
@@ -1066,12 +1893,71 @@ public final class SVGGraphics2D extends Graphics2D {
         }
     }
 
+    /**
+     * Returns {@code true} if anything drawn with the current paint and
+     * composite would be invisible and can be skipped.  Output is never
+     * skipped when the {@link SVGHints#KEY_INVISIBLE_ELEMENTS} hint is set to
+     * {@link SVGHints#VALUE_INVISIBLE_ELEMENTS_KEEP}, or when an element id
+     * has been supplied for the next element.
+     *
+     * @return A boolean.
+     */
+    private boolean isInvisible() {
+        return canSkipInvisible() && getColorAlpha() * getAlpha() <= 0.0f;
+    }
+
+    /**
+     * Returns {@code true} if drawing or filling the specified shape would
+     * be invisible and can be skipped.  This is the case when the current
+     * paint or composite is fully transparent, when a filled shape has no
+     * area, or when a drawn shape has zero length and the stroke has butt
+     * caps.  The size is only checked for rectangular shapes and lines,
+     * since finding the bounds of other shapes (a large {@code Path2D}, for
+     * example) takes an extra pass over the shape.
+     *
+     * @param s  the shape ({@code null} not permitted).
+     * @param fill  is the shape filled (rather than drawn)?
+     *
+     * @return A boolean.
+     */
+    private boolean isInvisible(Shape s, boolean fill) {
+        if (!canSkipInvisible()) {
+            return false;
+        }
+        if (getColorAlpha() * getAlpha() <= 0.0f) {
+            return true;
+        }
+        if (!(s instanceof RectangularShape) && !(s instanceof Line2D)) {
+            return false;
+        }
+        Rectangle2D bounds = s.getBounds2D();
+        if (fill) {
+            return !(bounds.getWidth() > 0.0 && bounds.getHeight() > 0.0);
+        }
+        return bounds.getWidth() <= 0.0 && bounds.getHeight() <= 0.0
+                && this.stroke instanceof BasicStroke
+                && ((BasicStroke) this.stroke).getEndCap()
+                == BasicStroke.CAP_BUTT;
+    }
+
+    /**
+     * Returns {@code true} if invisible output can be skipped.
+     *
+     * @return A boolean.
+     */
+    private boolean canSkipInvisible() {
+        return !SVGHints.VALUE_INVISIBLE_ELEMENTS_KEEP.equals(
+                this.hints.get(SVGHints.KEY_INVISIBLE_ELEMENTS))
+                && this.hints.get(SVGHints.KEY_ELEMENT_ID) == null;
+    }
+
     /**
      * Draws the specified shape with the current {@code paint} and
      * {@code stroke}.  There is direct handling for {@code Line2D},
-     * {@code Rectangle2D}, {@code Ellipse2D} and {@code Path2D}.  All other
-     * shapes are mapped to a {@code GeneralPath} and then drawn (effectively
-     * as {@code Path2D} objects).
+     * {@code Rectangle2D}, {@code Ellipse2D}, {@code RoundRectangle2D},
+     * {@code Arc2D}, {@code Polygon} and {@code Path2D}.  All other
+     * shapes are mapped to a {@code Path2D.Double} and then drawn (so that
+     * double precision coordinates are preserved).
      *
      * @param s  the shape ({@code null} not permitted).
      *
@@ -1085,6 +1971,22 @@ public final class SVGGraphics2D extends Graphics2D {
             fill(this.stroke.createStrokedShape(s));
             return;
         }
+        if (isInvisible(s, false)) {
+            return;
+        }
+        if (this.transformFolding && drawOrFillFolded(s, false)) {
+            return;
+        }
+        // set after the early returns, so it can't be picked up by the next
+        // element written
+        if (this.occlusionCulling) {
+            this.elementBounds = getDeviceBounds(s, false);
+        }
+        prepareForElement();
+        if (this.shapeInstancing && !(s instanceof Line2D)
+                && appendShapeInstance(s, strokeStyle() + ";fill:none")) {
+            return;
+        }
         if (s instanceof Line2D) {
             Line2D l = (Line2D) s;
             this.sb.append("<line");
@@ -1094,15 +1996,7 @@ public final class SVGGraphics2D extends Graphics2D {
                     .append("' x2='").append(geomDP(l.getX2()))
                     .append("' y2='").append(geomDP(l.getY2()))
                     .append('\'');
-            this.sb.append(" style='").append(strokeStyle()).append('\'');
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
-            }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
-            }
+            appendPresentationAttributes(strokeStyle());
             this.sb.append("/>");
         } else if (s instanceof Rectangle2D) {
             Rectangle2D r = (Rectangle2D) s;
@@ -1113,16 +2007,7 @@ public final class SVGGraphics2D extends Graphics2D {
                     .append("' width='").append(geomDP(r.getWidth()))
                     .append("' height='").append(geomDP(r.getHeight()))
                     .append('\'');
-            this.sb.append(" style='").append(strokeStyle())
-                    .append(";fill:none'");
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
-            }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
-            }
+            appendPresentationAttributes(strokeStyle() + ";fill:none");
             this.sb.append("/>");
         } else if (s instanceof Ellipse2D) {
             Ellipse2D e = (Ellipse2D) s;
@@ -1133,43 +2018,28 @@ public final class SVGGraphics2D extends Graphics2D {
                     .append("' rx='").append(geomDP(e.getWidth() / 2.0))
                     .append("' ry='").append(geomDP(e.getHeight() / 2.0))
                     .append('\'');
-            this.sb.append(" style='").append(strokeStyle())
-                    .append(";fill:none'");
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
-            }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
-            }
+            appendPresentationAttributes(strokeStyle() + ";fill:none");
             this.sb.append("/>");
+        } else if (s instanceof RoundRectangle2D
+                && !((RoundRectangle2D) s).isEmpty()) {
+            appendRoundRectElement((RoundRectangle2D) s,
+                    strokeStyle() + ";fill:none");
+        } else if (s instanceof Arc2D && !((Arc2D) s).isEmpty()) {
+            appendArcElement((Arc2D) s, strokeStyle() + ";fill:none");
+        } else if (s instanceof Polygon) {
+            appendPolygonElement((Polygon) s, strokeStyle() + ";fill:none");
         } else if (s instanceof Path2D) {
-            Path2D path = (Path2D) s;
-            this.sb.append("<g");
-            appendOptionalElementIDFromHint(this.sb);
-            this.sb.append(" style='").append(strokeStyle())
-                    .append(";fill:none'");
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
-            }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
-            }
-            this.sb.append('>');
-            this.sb.append("<path ").append(getSVGPathData(path)).append("/>");
-            this.sb.append("</g>");
+            appendPathElement((Path2D) s, strokeStyle() + ";fill:none");
         } else {
-            draw(new GeneralPath(s)); // handled as a Path2D next time through
+            draw(new Path2D.Double(s)); // handled as a Path2D next time through
         }
     }
 
     /**
      * Fills the specified shape with the current {@code paint}.  There is
-     * direct handling for {@code Rectangle2D}, {@code Ellipse2D} and
-     * {@code Path2D}.  All other shapes are mapped to a {@code GeneralPath}
+     * direct handling for {@code Rectangle2D}, {@code Ellipse2D},
+     * {@code RoundRectangle2D}, {@code Arc2D}, {@code Polygon} and
+     * {@code Path2D}.  All other shapes are mapped to a {@code Path2D.Double}
      * and then filled.
      *
      * @param s  the shape ({@code null} not permitted).
@@ -1178,9 +2048,32 @@ public final class SVGGraphics2D extends Graphics2D {
      */
     @Override
     public void fill(Shape s) {
+        if (isInvisible(s, true)) {
+            return;
+        }
+        if (s instanceof Rectangle2D && ((Rectangle2D) s).isEmpty()) {
+            return;
+        }
+        if (this.transformFolding && drawOrFillFolded(s, true)) {
+            return;
+        }
+        // set after the early returns, so it can't be picked up by the next
+        // element written
+        if (this.occlusionCulling) {
+            if (s instanceof Rectangle2D) {
+                cullOccludedElements((Rectangle2D) s);
+            }
+            this.elementBounds = getDeviceBounds(s, true);
+        }
         if (s instanceof Rectangle2D) {
             Rectangle2D r = (Rectangle2D) s;
-            if (r.isEmpty()) {
+            if (this.batchRectFills && isRectFillBatchable()) {
+                batchRectFill(r);
+                return;
+            }
+            prepareForElement();
+            if (this.shapeInstancing
+                    && appendShapeInstance(r, getSVGFillStyle())) {
                 return;
             }
             this.sb.append("<rect");
@@ -1190,17 +2083,14 @@ public final class SVGGraphics2D extends Graphics2D {
                     .append("' width='").append(geomDP(r.getWidth()))
                     .append("' height='").append(geomDP(r.getHeight()))
                     .append('\'');
-            this.sb.append(" style='").append(getSVGFillStyle()).append('\'');
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
-            }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
-            }
+            appendPresentationAttributes(getSVGFillStyle());
             this.sb.append("/>");
         } else if (s instanceof Ellipse2D) {
+            prepareForElement();
+            if (this.shapeInstancing
+                    && appendShapeInstance(s, getSVGFillStyle())) {
+                return;
+            }
             Ellipse2D e = (Ellipse2D) s;
             this.sb.append("<ellipse");
             appendOptionalElementIDFromHint(this.sb);
@@ -1209,87 +2099,708 @@ public final class SVGGraphics2D extends Graphics2D {
                     .append("' rx='").append(geomDP(e.getWidth() / 2.0))
                     .append("' ry='").append(geomDP(e.getHeight() / 2.0))
                     .append('\'');
-            this.sb.append(" style='").append(getSVGFillStyle()).append('\'');
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
+            appendPresentationAttributes(getSVGFillStyle());
+            this.sb.append("/>");
+        } else if ((s instanceof RoundRectangle2D
+                && !((RoundRectangle2D) s).isEmpty())
+                || (s instanceof Arc2D && !((Arc2D) s).isEmpty())
+                || s instanceof Polygon) {
+            prepareForElement();
+            if (this.shapeInstancing
+                    && appendShapeInstance(s, getSVGFillStyle())) {
+                return;
             }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
+            if (s instanceof RoundRectangle2D) {
+                appendRoundRectElement((RoundRectangle2D) s,
+                        getSVGFillStyle());
+            } else if (s instanceof Arc2D) {
+                appendArcElement((Arc2D) s, getSVGFillStyle());
+            } else {
+                appendPolygonElement((Polygon) s, getSVGFillStyle());
             }
-            this.sb.append("/>");
         } else if (s instanceof Path2D) {
-            Path2D path = (Path2D) s;
+            prepareForElement();
+            if (this.shapeInstancing && appendShapeInstance(s,
+                    getSVGFillStyle() + ";stroke:none")) {
+                return;
+            }
+            appendPathElement((Path2D) s, getSVGFillStyle() + ";stroke:none");
+        }  else {
+            fill(new Path2D.Double(s));  // handled as a Path2D next time through
+        }
+    }
+
+    /**
+     * Draws or fills a shape with the current transform applied to its
+     * coordinates (rather than written as a transform attribute), if the
+     * transform is a translation and/or a uniform positive scale and the
+     * current paint is a {@code Color}.  While the shape is written, the
+     * transform is set to the identity, the stroke is scaled to match and
+     * the clip is referenced in device space.
+     *
+     * @param s  the shape ({@code null} not permitted).
+     * @param fill  fill the shape (rather than draw it)?
+     *
+     * @return A boolean indicating whether the shape was written.
+     */
+    private boolean drawOrFillFolded(Shape s, boolean fill) {
+        if (this.transformGroups) {
+            return false;  // the enclosing group applies the transform
+        }
+        int type = this.transform.getType();
+        if (type == AffineTransform.TYPE_IDENTITY
+                || (type & ~(AffineTransform.TYPE_TRANSLATION
+                | AffineTransform.TYPE_UNIFORM_SCALE)) != 0
+                || !(this.paint instanceof Color)) {
+            return false;
+        }
+        AffineTransform t = this.transform;
+        Shape folded = foldShape(s, t);
+        Stroke savedStroke = this.stroke;
+        String savedClipRef = this.clipRef;
+        double scale = t.getScaleX();
+        if (!fill && scale != 1.0) {
+            BasicStroke bs = (BasicStroke) savedStroke;
+            float[] dashArray = bs.getDashArray();
+            if (dashArray != null) {
+                for (int i = 0; i < dashArray.length; i++) {
+                    dashArray[i] = (float) (dashArray[i] * scale);
+                }
+            }
+            this.stroke = new BasicStroke((float) (bs.getLineWidth() * scale),
+                    bs.getEndCap(), bs.getLineJoin(), bs.getMiterLimit(),
+                    dashArray, (float) (bs.getDashPhase() * scale));
+        }
+        this.transform = new AffineTransform();
+        this.clipRef = this.deviceClipRef;
+        try {
+            if (fill) {
+                fill(folded);
+            } else {
+                draw(folded);
+            }
+        } finally {
+            this.deviceClipRef = this.clipRef;
+            this.transform = t;
+            this.stroke = savedStroke;
+            this.clipRef = savedClipRef;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the shape with the transform applied, keeping the
+     * type of shape where the transform (a translation and/or a uniform
+     * positive scale) allows it.
+     *
+     * @param s  the shape ({@code null} not permitted).
+     * @param t  the transform ({@code null} not permitted).
+     *
+     * @return The transformed shape.
+     */
+    private static Shape foldShape(Shape s, AffineTransform t) {
+        double scale = t.getScaleX();
+        double tx = t.getTranslateX();
+        double ty = t.getTranslateY();
+        if (s instanceof Line2D) {
+            Line2D l = (Line2D) s;
+            return new Line2D.Double(l.getX1() * scale + tx,
+                    l.getY1() * scale + ty, l.getX2() * scale + tx,
+                    l.getY2() * scale + ty);
+        } else if (s instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) s;
+            return new Rectangle2D.Double(r.getX() * scale + tx,
+                    r.getY() * scale + ty, r.getWidth() * scale,
+                    r.getHeight() * scale);
+        } else if (s instanceof Ellipse2D) {
+            Ellipse2D e = (Ellipse2D) s;
+            return new Ellipse2D.Double(e.getX() * scale + tx,
+                    e.getY() * scale + ty, e.getWidth() * scale,
+                    e.getHeight() * scale);
+        } else if (s instanceof RoundRectangle2D) {
+            RoundRectangle2D rr = (RoundRectangle2D) s;
+            return new RoundRectangle2D.Double(rr.getX() * scale + tx,
+                    rr.getY() * scale + ty, rr.getWidth() * scale,
+                    rr.getHeight() * scale, rr.getArcWidth() * scale,
+                    rr.getArcHeight() * scale);
+        } else if (s instanceof Arc2D) {
+            Arc2D a = (Arc2D) s;
+            return new Arc2D.Double(a.getX() * scale + tx,
+                    a.getY() * scale + ty, a.getWidth() * scale,
+                    a.getHeight() * scale, a.getAngleStart(),
+                    a.getAngleExtent(), a.getArcType());
+        }
+        return new Path2D.Double(s, t);
+    }
+
+    /**
+     * Writes a {@code path} element for the specified path, with the
+     * specified style and the current transform and clip.  If path group
+     * wrapping is enabled, the attributes are written on an enclosing
+     * {@code g} element instead.
+     *
+     * @param path  the path ({@code null} not permitted).
+     * @param style  the style ({@code null} not permitted).
+     *
+     * @see #setPathGroupWrapping(boolean)
+     */
+    private void appendPathElement(Path2D path, String style) {
+        if (this.pathGroupWrapping) {
             this.sb.append("<g");
             appendOptionalElementIDFromHint(this.sb);
-            this.sb.append(" style='").append(getSVGFillStyle());
-            this.sb.append(";stroke:none'");
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-            		this.transform)).append('\'');
+            appendPresentationAttributes(style);
+            this.sb.append("><path ");
+            appendSVGPathData(this.sb, path.getPathIterator(null), true);
+            this.sb.append("/></g>");
+        } else {
+            this.sb.append("<path");
+            appendOptionalElementIDFromHint(this.sb);
+            appendPresentationAttributes(style);
+            this.sb.append(' ');
+            appendSVGPathData(this.sb, path.getPathIterator(null), true);
+            this.sb.append("/>");
+        }
+    }
+
+    /**
+     * Writes a {@code rect} element with rounded corners for the specified
+     * shape.
+     *
+     * @param rr  the round rectangle ({@code null} not permitted).
+     * @param style  the style ({@code null} not permitted).
+     */
+    private void appendRoundRectElement(RoundRectangle2D rr, String style) {
+        // Java2D limits the arc to the width and height, and ignores its sign
+        double rx = Math.min(rr.getWidth(), Math.abs(rr.getArcWidth())) / 2.0;
+        double ry = Math.min(rr.getHeight(), Math.abs(rr.getArcHeight())) / 2.0;
+        this.sb.append("<rect");
+        appendOptionalElementIDFromHint(this.sb);
+        this.sb.append(" x='").append(geomDP(rr.getX()))
+                .append("' y='").append(geomDP(rr.getY()))
+                .append("' width='").append(geomDP(rr.getWidth()))
+                .append("' height='").append(geomDP(rr.getHeight()))
+                .append("' rx='").append(geomDP(rx))
+                .append("' ry='").append(geomDP(ry)).append('\'');
+        appendPresentationAttributes(style);
+        this.sb.append("/>");
+    }
+
+    /**
+     * Writes a {@code path} element for the specified arc, using the SVG
+     * elliptical arc command.
+     *
+     * @param arc  the arc ({@code null} not permitted).
+     * @param style  the style ({@code null} not permitted).
+     */
+    private void appendArcElement(Arc2D arc, String style) {
+        double rx = arc.getWidth() / 2.0;
+        double ry = arc.getHeight() / 2.0;
+        double start = arc.getAngleStart();
+        double extent = arc.getAngleExtent();
+        // Java2D angles are anticlockwise on screen, SVG's positive-angle
+        // direction is clockwise
+        char sweep = extent > 0.0 ? '0' : '1';
+        String radii = geomDP(rx) + "," + geomDP(ry) + " 0 ";
+        Point2D p0 = arc.getStartPoint();
+        this.sb.append("<path");
+        appendOptionalElementIDFromHint(this.sb);
+        this.sb.append(" d='");
+        if (arc.getArcType() == Arc2D.PIE) {
+            this.sb.append('M').append(geomDP(arc.getCenterX())).append(',')
+                    .append(geomDP(arc.getCenterY())).append('L');
+        } else {
+            this.sb.append('M');
+        }
+        this.sb.append(geomDP(p0.getX())).append(',')
+                .append(geomDP(p0.getY()));
+        if (Math.abs(extent) >= 360.0) {
+            // a single arc command cannot draw a full ellipse, so use two
+            double angle = Math.toRadians(start + 180.0);
+            double midX = arc.getCenterX() + rx * Math.cos(angle);
+            double midY = arc.getCenterY() - ry * Math.sin(angle);
+            this.sb.append('A').append(radii).append("0,").append(sweep)
+                    .append(' ').append(geomDP(midX)).append(',')
+                    .append(geomDP(midY));
+            this.sb.append('A').append(radii).append("0,").append(sweep)
+                    .append(' ').append(geomDP(p0.getX())).append(',')
+                    .append(geomDP(p0.getY()));
+        } else {
+            Point2D p1 = arc.getEndPoint();
+            this.sb.append('A').append(radii)
+                    .append(Math.abs(extent) > 180.0 ? '1' : '0').append(',')
+                    .append(sweep).append(' ').append(geomDP(p1.getX()))
+                    .append(',').append(geomDP(p1.getY()));
+        }
+        if (arc.getArcType() != Arc2D.OPEN) {
+            this.sb.append('Z');
+        }
+        this.sb.append('\'');
+        appendPresentationAttributes(style);
+        this.sb.append("/>");
+    }
+
+    /**
+     * Writes a {@code polygon} element for the specified shape.
+     *
+     * @param polygon  the polygon ({@code null} not permitted).
+     * @param style  the style ({@code null} not permitted).
+     */
+    private void appendPolygonElement(Polygon polygon, String style) {
+        appendPointsElement("polygon", polygon.xpoints, polygon.ypoints,
+                polygon.npoints, style);
+    }
+
+    /**
+     * Writes a {@code polygon} or {@code polyline} element directly from
+     * arrays of points.  The coordinates are integers, so they are written
+     * directly without using the geometry converter.  Polygons use the
+     * even-odd fill rule (as specified for {@code java.awt.Polygon} and
+     * {@link #fillPolygon(int[], int[], int)}).  Nothing is written if
+     * {@code nPoints} is zero or less.
+     *
+     * @param element  the element name ({@code "polygon"} or
+     *     {@code "polyline"}).
+     * @param xPoints  the x-coordinates.
+     * @param yPoints  the y-coordinates.
+     * @param nPoints  the number of points.
+     * @param style  the style ({@code null} not permitted).
+     */
+    private void appendPointsElement(String element, int[] xPoints,
+            int[] yPoints, int nPoints, String style) {
+        if (nPoints <= 0) {
+            return;
+        }
+        this.sb.append('<').append(element);
+        appendOptionalElementIDFromHint(this.sb);
+        if (element.equals("polygon")) {
+            this.sb.append(" fill-rule='evenodd'");
+        }
+        this.sb.append(" points='");
+        for (int i = 0; i < nPoints; i++) {
+            if (i > 0) {
+                this.sb.append(' ');
             }
-            String clipPathRef = getClipPathRef();
-            if (!clipPathRef.isEmpty()) {
-                this.sb.append(' ').append(clipPathRef);
+            this.sb.append(xPoints[i]).append(',').append(yPoints[i]);
+        }
+        this.sb.append('\'');
+        appendPresentationAttributes(style);
+        this.sb.append("/>");
+    }
+
+    /**
+     * Writes a {@code use} element for the shape if the same shape (with the
+     * same style) has been seen before, differing only by location.  On the
+     * second occurrence of a shape, a symbol is registered for it.  If this
+     * method returns {@code false}, the caller should write the shape
+     * element in the usual way.
+     *
+     * @param s  the shape ({@code null} not permitted).
+     * @param style  the style for the shape.
+     *
+     * @return A boolean indicating whether a {@code use} element was written.
+     */
+    private boolean appendShapeInstance(Shape s, String style) {
+        if (this.hints.get(SVGHints.KEY_ELEMENT_ID) != null) {
+            return false;
+        }
+        // gradients are defined in user space, so they would be translated
+        // along with each use element
+        if (!(this.paint instanceof Color)) {
+            return false;
+        }
+        if (!(s instanceof Rectangle2D || s instanceof Ellipse2D)
+                && !isSmallPath(s)) {
+            return false;
+        }
+        Rectangle2D bounds = s.getBounds2D();
+        String content = getShapeInstanceContent(s, bounds, style);
+        String id = this.symbolIds.get(content);
+        if (id == null) {
+            if (this.symbolIds.size() >= MAX_SYMBOL_COUNT) {
+                return false;
             }
-            this.sb.append('>');
-            this.sb.append("<path ").append(getSVGPathData(path)).append("/>");
-            this.sb.append("</g>");
-        }  else {
-            fill(new GeneralPath(s));  // handled as a Path2D next time through
+            if (this.shapeInstanceKeys.remove(content) == null) {
+                this.shapeInstanceKeys.put(content, Boolean.TRUE);
+                return false;
+            }
+            id = registerSymbol(content);
+        }
+        this.sb.append("<use xlink:href='#").append(id).append("' x='")
+                .append(geomDP(bounds.getX())).append("' y='")
+                .append(geomDP(bounds.getY())).append('\'');
+        appendTransformAttribute(this.sb);
+        String clipPathRef = getClipPathRef();
+        if (!clipPathRef.isEmpty()) {
+            this.sb.append(' ').append(clipPathRef);
+        }
+        this.sb.append("/>");
+        return true;
+    }
+
+    /**
+     * Returns the SVG element for the shape translated so that the top-left
+     * corner of its bounds is at the origin.  This is used both as the key
+     * for detecting repeated shapes, and as the content of a symbol.
+     *
+     * @param s  the shape.
+     * @param bounds  the bounds of the shape.
+     * @param style  the style.
+     *
+     * @return The SVG element.
+     */
+    private String getShapeInstanceContent(Shape s, Rectangle2D bounds,
+            String style) {
+        StringBuilder b = new StringBuilder();
+        if (s instanceof Rectangle2D) {
+            b.append("<rect width='").append(geomDP(bounds.getWidth()))
+                    .append("' height='").append(geomDP(bounds.getHeight()))
+                    .append('\'');
+        } else if (s instanceof Ellipse2D) {
+            double rx = bounds.getWidth() / 2.0;
+            double ry = bounds.getHeight() / 2.0;
+            b.append("<ellipse cx='").append(geomDP(rx)).append("' cy='")
+                    .append(geomDP(ry)).append("' rx='").append(geomDP(rx))
+                    .append("' ry='").append(geomDP(ry)).append('\'');
+        } else {
+            Path2D p = new Path2D.Double(s, AffineTransform.getTranslateInstance(
+                    -bounds.getX(), -bounds.getY()));
+            b.append("<path ");
+            appendSVGPathData(b, p.getPathIterator(null), false);
+        }
+        return b.append(" style='").append(style).append("'/>").toString();
+    }
+
+    /**
+     * Returns {@code true} if the shape's path is small enough to be
+     * considered for writing as a symbol.
+     *
+     * @param shape  the shape ({@code null} not permitted).
+     *
+     * @return A boolean.
+     */
+    private static boolean isSmallPath(Shape shape) {
+        int count = 0;
+        PathIterator iterator = shape.getPathIterator(null);
+        while (!iterator.isDone()) {
+            count++;
+            if (count > MAX_SHAPE_INSTANCE_SEGMENTS) {
+                return false;
+            }
+            iterator.next();
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if a rectangle fill with the current settings can
+     * be added to a batch.  Only opaque fills are batched (so that overlapping
+     * rectangles look the same when merged into a single path) and there
+     * must be no element ID pending.
+     *
+     * @return A boolean.
+     */
+    private boolean isRectFillBatchable() {
+        return getColorAlpha() * getAlpha() >= 1.0f
+                && this.hints.get(SVGHints.KEY_ELEMENT_ID) == null;
+    }
+
+    /**
+     * Adds a rectangle fill to the pending batch, first writing out the
+     * current batch if the rectangle cannot be added to it.
+     *
+     * @param r  the rectangle ({@code null} not permitted).
+     */
+    private void batchRectFill(Rectangle2D r) {
+        Rectangle2D bounds = isOcclusionCullingActive() ? this.elementBounds
+                : null;
+        this.elementBounds = null;
+        ensureTransformGroup();
+        String attributes = getPresentationAttributes(getSVGFillStyle());
+        if (!this.rectFillBatch.canAdd(attributes)) {
+            flushPendingOutput();
+        }
+        this.rectFillBatch.add(attributes, geomDP(r.getX()), geomDP(r.getY()),
+                geomDP(r.getWidth()), geomDP(r.getHeight()), bounds);
+    }
+
+    /**
+     * Returns a string containing the style attribute (with the specified
+     * content) followed by the transform and clip-path attributes, if
+     * required.
+     *
+     * @param style  the style ({@code null} not permitted).
+     *
+     * @return The attributes string (with a leading space).
+     */
+    private String getPresentationAttributes(String style) {
+        StringBuilder b = new StringBuilder(" style='").append(style)
+                .append('\'');
+        appendTransformAttribute(b);
+        String clipPathRef = getClipPathRef();
+        if (!clipPathRef.isEmpty()) {
+            b.append(' ').append(clipPathRef);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Appends the style attribute (with the specified content) followed by
+     * the transform and clip-path attributes, if required, to the output
+     * buffer.  When attribute hoisting is enabled, the location of the
+     * attributes is recorded for the element being written.
+     *
+     * @param style  the style ({@code null} not permitted).
+     */
+    private void appendPresentationAttributes(String style) {
+        int start = this.sb.length();
+        this.sb.append(" style='").append(style).append('\'');
+        appendTransformAttribute(this.sb);
+        String clipPathRef = getClipPathRef();
+        if (!clipPathRef.isEmpty()) {
+            this.sb.append(' ').append(clipPathRef);
+        }
+        if (this.attributeHoisting) {
+            this.sharedAttributeRun.recordAttributes(start, this.sb.length());
+        }
+    }
+
+    /**
+     * Writes any content that is being held back (for example, a batch of
+     * rectangle fills) to the output buffer.  This must be called before
+     * anything else is written to the buffer.
+     */
+    private void flushPendingOutput() {
+        if (this.occlusionCulling) {
+            this.occlusionCuller.endElement(this.sb.length());
+        }
+        if (this.attributeHoisting) {
+            this.sharedAttributeRun.endElement(this.sb);
+            this.sharedAttributeRun.close(this.sb);
+        }
+        if (this.occlusionCulling) {
+            // the batch is tracked as a single element
+            this.occlusionCuller.startElement(this.sb.length(),
+                    this.rectFillBatch.getBounds());
+        }
+        this.rectFillBatch.writeTo(this.sb);
+        if (this.occlusionCulling) {
+            this.occlusionCuller.endElement(this.sb.length());
+        }
+    }
+
+    /**
+     * Prepares the output buffer for a new element, by writing any pending
+     * output and opening a transform group (if required).  When attribute
+     * hoisting is enabled, the previous element is added to the current run
+     * (rather than ending it).
+     */
+    private void prepareForElement() {
+        if (this.occlusionCulling) {
+            this.occlusionCuller.endElement(this.sb.length());
+        }
+        if (this.attributeHoisting && this.rectFillBatch.isEmpty()) {
+            this.sharedAttributeRun.endElement(this.sb);
+        } else {
+            flushPendingOutput();
+        }
+        ensureTransformGroup();
+        if (this.attributeHoisting) {
+            this.sharedAttributeRun.startElement(this.sb.length());
+        }
+        if (this.occlusionCulling) {
+            this.occlusionCuller.startElement(this.sb.length(),
+                    isOcclusionCullingActive() ? this.elementBounds : null);
+            this.elementBounds = null;
+        }
+    }
+
+    /**
+     * Prepares the output buffer for content other than an element (a
+     * group, title or anchor), by writing any pending output and closing the
+     * open transform group.  Elements written before this content can no
+     * longer be removed by occlusion culling.
+     */
+    private void prepareForNonElement() {
+        closeTransformGroup();
+        this.occlusionCuller.reset();
+    }
+
+    /**
+     * Returns {@code true} if occlusion culling is enabled and can be
+     * applied (it cannot be combined with options that restructure the
+     * output after elements are written).
+     *
+     * @return A boolean.
+     */
+    private boolean isOcclusionCullingActive() {
+        return this.occlusionCulling && !this.transformGroups
+                && !this.attributeHoisting;
+    }
+
+    /**
+     * Returns the bounds of the specified shape in device space, allowing
+     * for the current stroke if the shape is drawn rather than filled.  The
+     * result may be larger than the area actually painted.
+     *
+     * @param s  the shape ({@code null} not permitted).
+     * @param fill  is the shape filled (rather than drawn)?
+     *
+     * @return The bounds.
+     */
+    private Rectangle2D getDeviceBounds(Shape s, boolean fill) {
+        Rectangle2D bounds = s.getBounds2D();
+        if (!fill && this.stroke instanceof BasicStroke) {
+            BasicStroke bs = (BasicStroke) this.stroke;
+            double w = bs.getLineWidth() > 0.0 ? bs.getLineWidth()
+                    : this.zeroStrokeWidth;
+            double factor = Math.sqrt(2.0);  // square caps
+            if (bs.getLineJoin() == BasicStroke.JOIN_MITER) {
+                factor = Math.max(factor, bs.getMiterLimit());
+            }
+            double pad = w / 2.0 * factor;
+            bounds = new Rectangle2D.Double(bounds.getX() - pad,
+                    bounds.getY() - pad, bounds.getWidth() + 2 * pad,
+                    bounds.getHeight() + 2 * pad);
+        }
+        return this.transform.createTransformedShape(bounds).getBounds2D();
+    }
+
+    /**
+     * Removes the elements that will be completely covered when the
+     * specified rectangle is filled, provided that the fill is opaque,
+     * unclipped and axis-aligned in device space.
+     *
+     * @param r  the rectangle ({@code null} not permitted).
+     */
+    private void cullOccludedElements(Rectangle2D r) {
+        if (!isOcclusionCullingActive() || this.clip != null
+                || !(this.paint instanceof Color)
+                || getColorAlpha() * getAlpha() < 1.0f
+                || this.transform.getShearX() != 0.0
+                || this.transform.getShearY() != 0.0) {
+            return;
+        }
+        if (this.composite instanceof AlphaComposite) {
+            int rule = ((AlphaComposite) this.composite).getRule();
+            if (rule != AlphaComposite.SRC_OVER && rule != AlphaComposite.SRC) {
+                return;
+            }
+        }
+        flushPendingOutput();
+        this.occlusionCuller.cull(this.sb,
+                this.transform.createTransformedShape(r).getBounds2D());
+    }
+
+    /**
+     * Ensures that, when transform groups are enabled, the open transform
+     * groups match the calls that produced the current transform, closing
+     * and opening groups as necessary.
+     */
+    private void ensureTransformGroup() {
+        if (!this.transformGroups
+                || this.transformGroupState.isOpenWith(this.transformStep)) {
+            return;
         }
+        flushPendingOutput();
+        this.transformGroupState.moveTo(this.transformStep, this.sb);
+    }
+
+    /**
+     * Writes any pending output and closes the open transform groups, if
+     * there are any.
+     */
+    private void closeTransformGroup() {
+        flushPendingOutput();
+        this.transformGroupState.close(this.sb);
     }
 
     /**
-     * Creates an SVG path string for the supplied Java2D path.
+     * Returns the end tags for the open transform groups followed by the
+     * specified end tag.  This is used to complete a copy of the output
+     * without closing the groups in the buffer, so that drawing can
+     * continue inside them.
      *
-     * @param path  the path ({@code null} not permitted).
+     * @param endTag  the end tag ({@code null} not permitted).
      *
-     * @return An SVG path string.
+     * @return The end tags.
      */
-    private String getSVGPathData(Path2D path) {
+    private String getEndTags(String endTag) {
         StringBuilder b = new StringBuilder();
-        if (path.getWindingRule() == Path2D.WIND_EVEN_ODD) {
+        for (int i = 0; i < this.transformGroupState.getDepth(); i++) {
+            b.append("</g>");
+        }
+        return b.append(endTag).toString();
+    }
+
+    /**
+     * Appends the transform attribute for the current transform to the
+     * specified builder, unless the transform is the identity transform or
+     * is written as a group element.
+     *
+     * @param b  the builder ({@code null} not permitted).
+     */
+    private void appendTransformAttribute(StringBuilder b) {
+        if (!this.transformGroups && !this.transform.isIdentity()) {
+            b.append(" transform='").append(getSVGTransform(this.transform))
+                    .append('\'');
+        }
+    }
+
+    /**
+     * Creates a writer for SVG path data, using the current geometry
+     * converter and path data format.
+     *
+     * @param simplify  apply the path simplification tolerance (if one is
+     *     set)?
+     *
+     * @return A new writer.
+     */
+    private PathDataWriter createPathDataWriter(boolean simplify) {
+        double tolerance = 0.0;
+        if (simplify && this.pathSimplificationTolerance > 0.0) {
+            // the largest factor by which the transform stretches a
+            // distance, so the tolerance holds in all directions
+            double a = this.transform.getScaleX();
+            double b = this.transform.getShearX();
+            double c = this.transform.getShearY();
+            double d = this.transform.getScaleY();
+            double sum = a * a + b * b + c * c + d * d;
+            double det = a * d - b * c;
+            double scale = Math.sqrt((sum + Math.sqrt(Math.max(0.0,
+                    sum * sum - 4 * det * det))) / 2.0);
+            if (scale > 0.0 && Double.isFinite(scale)) {
+                tolerance = this.pathSimplificationTolerance / scale;
+            }
+        }
+        return new PathDataWriter(this.geomDoubleConverter,
+                this.compactPathData,
+                this.geomDoubleConverter == DEFAULT_DOUBLE_CONVERTER,
+                tolerance);
+    }
+
+    /**
+     * Appends the SVG path data (the {@code d} attribute, preceded by the
+     * {@code fill-rule} attribute if required) for the segments returned by
+     * the iterator directly to the specified builder.
+     *
+     * @param b  the builder ({@code null} not permitted).
+     * @param iterator  the path iterator ({@code null} not permitted).
+     * @param simplify  apply the path simplification tolerance (if one is
+     *     set)?
+     */
+    private void appendSVGPathData(StringBuilder b, PathIterator iterator,
+            boolean simplify) {
+        if (iterator.getWindingRule() == PathIterator.WIND_EVEN_ODD) {
             b.append("fill-rule='evenodd' ");
         }
         b.append("d='");
-        float[] coords = new float[6];
-        PathIterator iterator = path.getPathIterator(null);
-        while (!iterator.isDone()) {
-            int type = iterator.currentSegment(coords);
-            switch (type) {
-            case (PathIterator.SEG_MOVETO):
-                b.append('M').append(geomDP(coords[0])).append(',')
-                        .append(geomDP(coords[1]));
-                break;
-            case (PathIterator.SEG_LINETO):
-                b.append('L').append(geomDP(coords[0])).append(',')
-                        .append(geomDP(coords[1]));
-                break;
-            case (PathIterator.SEG_QUADTO):
-                b.append('Q').append(geomDP(coords[0]))
-                        .append(',').append(geomDP(coords[1]))
-                        .append(',').append(geomDP(coords[2]))
-                        .append(',').append(geomDP(coords[3]));
-                break;
-            case (PathIterator.SEG_CUBICTO):
-                b.append('C').append(geomDP(coords[0])).append(',')
-                        .append(geomDP(coords[1])).append(',')
-                        .append(geomDP(coords[2])).append(',')
-                        .append(geomDP(coords[3])).append(',')
-                        .append(geomDP(coords[4])).append(',')
-                        .append(geomDP(coords[5]));
-                break;
-            case (PathIterator.SEG_CLOSE):
-                b.append('Z');
-                break;
-            default:
-                break;
-            }
-            iterator.next();
+        PathDataWriter writer = createPathDataWriter(simplify);
+        if (this.parallelPathThreshold > 0 && !writer.isSimplifying()) {
+            writer.appendInParallel(b, iterator, this.parallelPathThreshold);
+        } else {
+            writer.append(b, iterator);
         }
-        return b.append('\'').toString();
+        b.append('\'');
     }
 
     /**
@@ -1328,17 +2839,75 @@ public final class SVGGraphics2D extends Graphics2D {
     }
 
     /**
-     * Returns the SVG RGB color string for the specified color.
+     * Returns the SVG RGB color string for the specified color (in
+     * hexadecimal notation if minified styles are enabled).  Since a
+     * document typically uses only a few colors, the strings are cached.
      *
      * @param c  the color ({@code null} not permitted).
      *
      * @return The SVG RGB color string.
      */
     private String rgbColorStr(Color c) {
-        StringBuilder b = new StringBuilder("rgb(");
-        b.append(c.getRed()).append(",").append(c.getGreen()).append(",")
-                .append(c.getBlue()).append(")");
-        return b.toString();
+        int key = c.getRGB() & 0xFFFFFF;
+        if (this.minifyStyles) {
+            key |= 0x1000000;
+        }
+        String result = this.colorStrings.get(key);
+        if (result == null) {
+            if (this.minifyStyles) {
+                result = hexColorStr(c);
+            } else {
+                result = "rgb(" + c.getRed() + "," + c.getGreen() + ","
+                        + c.getBlue() + ")";
+            }
+            this.colorStrings.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shortest hexadecimal color string for the specified color
+     * ({@code #rgb} if each component has two identical hex digits,
+     * otherwise {@code #rrggbb}).  The alpha component is ignored.
+     *
+     * @param c  the color ({@code null} not permitted).
+     *
+     * @return The color string.
+     */
+    private static String hexColorStr(Color c) {
+        int r = c.getRed();
+        int g = c.getGreen();
+        int b = c.getBlue();
+        if (r % 17 == 0 && g % 17 == 0 && b % 17 == 0) {
+            return "#" + Integer.toHexString(r / 17)
+                    + Integer.toHexString(g / 17) + Integer.toHexString(b / 17);
+        }
+        String hex = Integer.toHexString(0x1000000 | (r << 16) | (g << 8) | b);
+        return "#" + hex.substring(1);
+    }
+
+    /**
+     * Returns the string for a number in a style property.  In minified
+     * mode, a zero fractional part and a leading zero are omitted.
+     *
+     * @param f  the number.
+     *
+     * @return The string.
+     */
+    private String styleNumber(float f) {
+        if (!this.minifyStyles) {
+            return String.valueOf(f);
+        }
+        if (f == Math.rint(f) && Math.abs(f) < 1.0e7f) {
+            return Integer.toString((int) f);
+        }
+        String result = String.valueOf(f);
+        if (result.startsWith("0.")) {
+            return result.substring(1);
+        } else if (result.startsWith("-0.")) {
+            return "-" + result.substring(2);
+        }
+        return result;
     }
 
     /**
@@ -1405,9 +2974,21 @@ public final class SVGGraphics2D extends Graphics2D {
             dashArray = bs.getDashArray();
         }
         StringBuilder b = new StringBuilder();
-        b.append("stroke-width:").append(strokeWidth).append(";");
-        b.append("stroke:").append(svgColorStr()).append(";");
-        b.append("stroke-opacity:").append(getColorAlpha() * getAlpha());
+        float opacity = getColorAlpha() * getAlpha();
+        if (this.minifyStyles) {
+            if (strokeWidth != 1.0) {
+                b.append("stroke-width:")
+                        .append(styleNumber((float) strokeWidth)).append(';');
+            }
+            b.append("stroke:").append(svgColorStr());
+            if (opacity < 1.0) {
+                b.append(";stroke-opacity:").append(styleNumber(opacity));
+            }
+        } else {
+            b.append("stroke-width:").append(strokeWidth).append(";");
+            b.append("stroke:").append(svgColorStr()).append(";");
+            b.append("stroke-opacity:").append(opacity);
+        }
         if (!strokeCap.equals(DEFAULT_STROKE_CAP)) {
             b.append(";stroke-linecap:").append(strokeCap);
         }
@@ -1415,7 +2996,8 @@ public final class SVGGraphics2D extends Graphics2D {
             b.append(";stroke-linejoin:").append(strokeJoin);
         }
         if (Math.abs(DEFAULT_MITER_LIMIT - miterLimit) > 0.001) {
-            b.append(";stroke-miterlimit:").append(geomDP(miterLimit));
+            b.append(";stroke-miterlimit:").append(this.minifyStyles
+                    ? styleNumber(miterLimit) : geomDP(miterLimit));
         }
         if (dashArray != null && dashArray.length != 0) {
             b.append(";stroke-dasharray:");
@@ -1423,7 +3005,7 @@ public final class SVGGraphics2D extends Graphics2D {
                 if (i != 0) {
                     b.append(',');
                 }
-                b.append(dashArray[i]);
+                b.append(styleNumber(dashArray[i]));
             }
         }
         if (this.checkStrokeControlHint) {
@@ -1463,7 +3045,8 @@ public final class SVGGraphics2D extends Graphics2D {
         b.append("fill:").append(svgColorStr());
         double opacity = getColorAlpha() * getAlpha();
         if (opacity < 1.0) {
-            b.append(';').append("fill-opacity:").append(opacity);
+            b.append(';').append("fill-opacity:").append(this.minifyStyles
+                    ? styleNumber((float) opacity) : String.valueOf(opacity));
         }
         return b.toString();
     }
@@ -1554,6 +3137,9 @@ public final class SVGGraphics2D extends Graphics2D {
      * @return A string containing font style info.
      */
     private String getSVGFontStyle() {
+        if (this.minifyStyles) {
+            return getMinifiedSVGFontStyle();
+        }
         StringBuilder b = new StringBuilder();
         b.append("fill: ").append(svgColorStr()).append("; ");
         b.append("fill-opacity: ").append(getColorAlpha() * getAlpha())
@@ -1577,6 +3163,38 @@ public final class SVGGraphics2D extends Graphics2D {
         return b.toString();
     }
 
+    /**
+     * Returns a string containing font style info, in minified form.
+     *
+     * @return A string containing font style info.
+     */
+    private String getMinifiedSVGFontStyle() {
+        StringBuilder b = new StringBuilder();
+        b.append("fill:").append(svgColorStr());
+        float opacity = getColorAlpha() * getAlpha();
+        if (opacity < 1.0) {
+            b.append(";fill-opacity:").append(styleNumber(opacity));
+        }
+        String fontFamily = this.fontFunction.apply(this.font.getFamily());
+        b.append(";font-family:").append(fontFamily);
+        b.append(";font-size:").append(this.font.getSize())
+                .append(this.fontSizeUnits);
+        if (this.font.isBold()) {
+            b.append(";font-weight:bold");
+        }
+        if (this.font.isItalic()) {
+            b.append(";font-style:italic");
+        }
+        Object tracking = this.font.getAttributes().get(TextAttribute.TRACKING);
+        if (tracking instanceof Number) {
+            double spacing = ((Number) tracking).doubleValue() * this.font.getSize();
+            if (Math.abs(spacing) > 0.000001) { // not zero
+                b.append(";letter-spacing:").append(geomDP(spacing));
+            }
+        }
+        return b.toString();
+    }
+
     /**
      * Returns the font metrics for the specified font.
      *
@@ -1641,18 +3259,23 @@ public final class SVGGraphics2D extends Graphics2D {
         if (str == null) {
             throw new NullPointerException("Null 'str' argument.");
         }
-        if (str.isEmpty()) {
+        if (str.isEmpty() || isInvisible()) {
             return;
         }
         if (!SVGHints.VALUE_DRAW_STRING_TYPE_VECTOR.equals(
                 this.hints.get(SVGHints.KEY_DRAW_STRING_TYPE))) {
+            prepareForElement();
+            int start = this.sb.length();
             this.sb.append("<g");
             appendOptionalElementIDFromHint(this.sb);
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-                    this.transform)).append('\'');
-            }
+            appendTransformAttribute(this.sb);
             this.sb.append(">");
+            // with group optimization, a group with no attributes is omitted
+            boolean wrapped = !this.groupOptimization
+                    || this.sb.length() > start + 3;
+            if (!wrapped) {
+                this.sb.setLength(start);
+            }
             this.sb.append("<text x='").append(geomDP(x))
                     .append("' y='").append(geomDP(y))
                     .append('\'');
@@ -1669,7 +3292,9 @@ public final class SVGGraphics2D extends Graphics2D {
             }
             this.sb.append(">");
             this.sb.append(SVGUtils.escapeForXML(str)).append("</text>");
-            this.sb.append("</g>");
+            if (wrapped) {
+                this.sb.append("</g>");
+            }
         } else {
             AttributedString as = new AttributedString(str,
                     this.font.getAttributes());
@@ -1755,7 +3380,8 @@ public final class SVGGraphics2D extends Graphics2D {
     public void translate(double tx, double ty) {
         AffineTransform t = getTransform();
         t.translate(tx, ty);
-        setTransform(t);
+        setTransform(t, () -> "translate(" + transformDP(tx) + ","
+                + transformDP(ty) + ")");
     }
 
     /**
@@ -1767,7 +3393,8 @@ public final class SVGGraphics2D extends Graphics2D {
     public void rotate(double theta) {
         AffineTransform t = getTransform();
         t.rotate(theta);
-        setTransform(t);
+        setTransform(t, () -> "rotate(" + transformDP(Math.toDegrees(theta))
+                + ")");
     }
 
     /**
@@ -1794,7 +3421,8 @@ public final class SVGGraphics2D extends Graphics2D {
     public void scale(double sx, double sy) {
         AffineTransform t = getTransform();
         t.scale(sx, sy);
-        setTransform(t);
+        setTransform(t, () -> "scale(" + transformDP(sx) + ","
+                + transformDP(sy) + ")");
     }
 
     /**
@@ -1822,7 +3450,7 @@ public final class SVGGraphics2D extends Graphics2D {
     public void transform(AffineTransform t) {
         AffineTransform tx = getTransform();
         tx.concatenate(t);
-        setTransform(tx);
+        setTransform(tx, () -> getSVGTransform(t));
     }
 
     /**
@@ -1847,12 +3475,57 @@ public final class SVGGraphics2D extends Graphics2D {
      */
     @Override
     public void setTransform(AffineTransform t) {
+        setTransform(t, null);
+    }
+
+    /**
+     * Sets the transform, recording the call that produced it when
+     * transforms are written as groups.
+     *
+     * @param t  the new transform ({@code null} permitted, resets to the
+     *     identity transform).
+     * @param step  a supplier for the SVG transform function that takes the
+     *     current transform to the new transform ({@code null} permitted,
+     *     if the new transform is not relative to the current transform).
+     */
+    private void setTransform(AffineTransform t, Supplier<String> step) {
         if (t == null) {
             this.transform = new AffineTransform();
         } else {
             this.transform = new AffineTransform(t);
         }
         this.clipRef = null;
+        updateTransformStep(step);
+    }
+
+    /**
+     * Updates the record of the transform calls that produced the current
+     * transform, when transforms are written as groups.  If the current
+     * transform is equal to the transform after an earlier call, the later
+     * calls are discarded (so that their groups will be closed).
+     *
+     * @param step  a supplier for the SVG transform function that takes the
+     *     previous transform to the current transform ({@code null}
+     *     permitted, if the current transform is not relative to the
+     *     previous transform).
+     */
+    private void updateTransformStep(Supplier<String> step) {
+        if (!this.transformGroups || this.transform.isIdentity()) {
+            this.transformStep = null;
+            return;
+        }
+        TransformStep previous = TransformStep.find(this.transformStep,
+                this.transform);
+        if (previous != null) {
+            this.transformStep = previous;
+        } else if (step == null || (this.transformStep != null
+                && this.transformStep.getDepth() >= MAX_TRANSFORM_GROUP_DEPTH)) {
+            this.transformStep = new TransformStep(null, this.transform,
+                    getSVGTransform(this.transform));
+        } else {
+            this.transformStep = new TransformStep(this.transformStep,
+                    this.transform, step.get());
+        }
     }
 
     /**
@@ -1951,6 +3624,57 @@ public final class SVGGraphics2D extends Graphics2D {
         // null is handled fine here...
         this.clip = this.transform.createTransformedShape(shape);
         this.clipRef = null;
+        this.deviceClipRef = null;
+    }
+
+    /**
+     * Creates the id for a new item in the DEFS element.  By default, this
+     * is the defs key prefix, the item type and the item's index.  If
+     * content-addressed ids are enabled, a short hash of the item's content
+     * is used instead of the index (with a numeric suffix in the unlikely
+     * event that two items with different content have the same hash).
+     *
+     * @param type  the item type (for example, {@code "clip-"}).
+     * @param index  the index of the item amongst items of the same type.
+     * @param content  a supplier for the item's content (only called when
+     *     content-addressed ids are enabled).
+     *
+     * @return The id.
+     */
+    private String createDefsId(String type, int index,
+            Supplier<String> content) {
+        if (!this.contentAddressedIds) {
+            return this.defsKeyPrefix + type + index;
+        }
+        String c = content.get();
+        String base = this.defsKeyPrefix + type + contentHash(c);
+        String id = base;
+        int n = 1;
+        while (true) {
+            String existing = this.contentIds.putIfAbsent(id, c);
+            if (existing == null || existing.equals(c)) {
+                return id;
+            }
+            n++;
+            id = base + "-" + n;
+        }
+    }
+
+    /**
+     * Returns a short hash (in base 36) of the specified string, using the
+     * 64-bit FNV-1a algorithm truncated to 48 bits.
+     *
+     * @param s  the string ({@code null} not permitted).
+     *
+     * @return The hash string.
+     */
+    private static String contentHash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return Long.toString(h & 0xFFFFFFFFFFFFL, 36);
     }
 
     /**
@@ -1964,14 +3688,28 @@ public final class SVGGraphics2D extends Graphics2D {
             this.clipRef = null;
             return null;
         }
-        // generate the path
-        String pathStr = getSVGPathData(new Path2D.Double(clip));
-        int index = this.clipPaths.indexOf(pathStr);
-        if (index < 0) {
-            this.clipPaths.add(pathStr);
-            index = this.clipPaths.size() - 1;
+        // look up the path by its geometry, and only generate the path
+        // data the first time the clip is seen
+        PathKey key = new PathKey(clip);
+        if (this.defsLibrary != null) {
+            return this.defsLibrary.registerClip(CLIP_KEY_PREFIX, key, () -> {
+                StringBuilder b = new StringBuilder();
+                appendSVGPathData(b, clip.getPathIterator(null), false);
+                return b.toString();
+            });
+        }
+        Integer index = this.clipPathIndices.get(key);
+        if (index == null) {
+            StringBuilder b = new StringBuilder();
+            appendSVGPathData(b, clip.getPathIterator(null), false);
+            String pathData = b.toString();
+            index = this.clipPaths.size();
+            this.clipPaths.add(pathData);
+            this.clipPathIds.add(createDefsId(CLIP_KEY_PREFIX, index,
+                    () -> pathData));
+            this.clipPathIndices.put(key, index);
         }
-        return this.defsKeyPrefix + CLIP_KEY_PREFIX + index;
+        return this.clipPathIds.get(index);
     }
 
     /**
@@ -2042,6 +3780,7 @@ public final class SVGGraphics2D extends Graphics2D {
           this.clip = new Path2D.Double(a1);
         }
         this.clipRef = null;
+        this.deviceClipRef = null;
     }
 
     /**
@@ -2257,9 +3996,16 @@ public final class SVGGraphics2D extends Graphics2D {
      */
     @Override
     public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints,
-                false);
-        draw(p);
+        if (!(this.stroke instanceof BasicStroke)) {
+            draw(GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, false));
+            return;
+        }
+        if (isInvisible()) {
+            return;
+        }
+        prepareForElement();
+        appendPointsElement("polyline", xPoints, yPoints, nPoints,
+                strokeStyle() + ";fill:none");
     }
 
     /**
@@ -2273,13 +4019,21 @@ public final class SVGGraphics2D extends Graphics2D {
      * @see #fillPolygon(int[], int[], int)      */
     @Override
     public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints,
-                true);
-        draw(p);
+        if (!(this.stroke instanceof BasicStroke)) {
+            draw(GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, true));
+            return;
+        }
+        if (isInvisible()) {
+            return;
+        }
+        prepareForElement();
+        appendPointsElement("polygon", xPoints, yPoints, nPoints,
+                strokeStyle() + ";fill:none");
     }
 
     /**
-     * Fills the specified polygon using the current {@code paint}.
+     * Fills the specified polygon using the current {@code paint} (and the
+     * even-odd fill rule).
      *
      * @param xPoints  the x-points.
      * @param yPoints  the y-points.
@@ -2289,9 +4043,228 @@ public final class SVGGraphics2D extends Graphics2D {
      */
     @Override
     public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints,
-                true);
-        fill(p);
+        if (isInvisible()) {
+            return;
+        }
+        prepareForElement();
+        appendPointsElement("polygon", xPoints, yPoints, nPoints,
+                getSVGFillStyle());
+    }
+
+    /**
+     * Draws a polyline through the first {@code n} points in the arrays
+     * using the current {@code paint} and {@code stroke}.  This is an
+     * alternative to drawing a {@code Path2D} that avoids creating a shape
+     * for large data series: a single {@code polyline} element is written
+     * directly from the arrays.
+     *
+     * @param xs  the x-coordinates ({@code null} not permitted).
+     * @param ys  the y-coordinates ({@code null} not permitted).
+     * @param n  the number of points (in the range 0 to the length of the
+     *     shorter array).
+     *
+     * @since 5.0.8
+     */
+    public void drawPolyline(double[] xs, double[] ys, int n) {
+        Args.nullNotPermitted(xs, "xs");
+        Args.nullNotPermitted(ys, "ys");
+        Args.requireInRange(n, "n", 0, Math.min(xs.length, ys.length));
+        if (n == 0 || isInvisible()) {
+            return;
+        }
+        if (!(this.stroke instanceof BasicStroke)) {
+            Path2D path = new Path2D.Double();
+            path.moveTo(xs[0], ys[0]);
+            for (int i = 1; i < n; i++) {
+                path.lineTo(xs[i], ys[i]);
+            }
+            draw(path);
+            return;
+        }
+        prepareForElement();
+        this.sb.append("<polyline");
+        appendOptionalElementIDFromHint(this.sb);
+        this.sb.append(" points='");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                this.sb.append(' ');
+            }
+            this.sb.append(geomDP(xs[i])).append(',').append(geomDP(ys[i]));
+        }
+        this.sb.append('\'');
+        appendPresentationAttributes(strokeStyle() + ";fill:none");
+        this.sb.append("/>");
+    }
+
+    /**
+     * Fills {@code n} rectangles using the current {@code paint}.  The
+     * rectangles are specified in the {@code xywh} array as groups of four
+     * values (x, y, width and height).  Rectangles with a width or height
+     * that is not positive are skipped.  The style, transform and clip are
+     * written once for all the rectangles: opaque rectangles are written as
+     * a single {@code path} element, and translucent rectangles (which must
+     * be blended individually where they overlap) are written as
+     * {@code rect} elements in a single group.
+     *
+     * @param xywh  the rectangle coordinates ({@code null} not permitted).
+     * @param n  the number of rectangles (in the range 0 to one quarter of
+     *     the array length).
+     *
+     * @since 5.0.8
+     */
+    public void fillRects(double[] xywh, int n) {
+        Args.nullNotPermitted(xywh, "xywh");
+        Args.requireInRange(n, "n", 0, xywh.length / 4);
+        if (n == 0 || isInvisible()) {
+            return;
+        }
+        boolean empty = true;
+        for (int i = 0; i < n && empty; i++) {
+            empty = !(xywh[i * 4 + 2] > 0.0 && xywh[i * 4 + 3] > 0.0);
+        }
+        if (empty) {
+            return;
+        }
+        prepareForElement();
+        boolean opaque = getColorAlpha() * getAlpha() >= 1.0f;
+        if (opaque) {
+            this.sb.append("<path");
+            appendOptionalElementIDFromHint(this.sb);
+            appendPresentationAttributes(getSVGFillStyle());
+            this.sb.append(" d='");
+        } else {
+            this.sb.append("<g");
+            appendOptionalElementIDFromHint(this.sb);
+            appendPresentationAttributes(getSVGFillStyle());
+            this.sb.append('>');
+        }
+        for (int i = 0; i < n; i++) {
+            double w = xywh[i * 4 + 2];
+            double h = xywh[i * 4 + 3];
+            if (!(w > 0.0 && h > 0.0)) {
+                continue;
+            }
+            String x = geomDP(xywh[i * 4]);
+            String y = geomDP(xywh[i * 4 + 1]);
+            String ws = geomDP(w);
+            String hs = geomDP(h);
+            if (opaque) {
+                this.sb.append('M').append(x).append(' ').append(y)
+                        .append('h').append(ws).append('v').append(hs)
+                        .append("h-").append(ws).append('z');
+            } else {
+                this.sb.append("<rect x='").append(x).append("' y='")
+                        .append(y).append("' width='").append(ws)
+                        .append("' height='").append(hs).append("'/>");
+            }
+        }
+        this.sb.append(opaque ? "'/>" : "</g>");
+    }
+
+    /**
+     * Fills the {@code marker} shape at each of the first {@code n} points
+     * in the arrays, using the current {@code paint}.  The marker is
+     * translated to each point, so it should normally be centred on the
+     * origin.  The marker is written once as a {@code symbol} in the DEFS
+     * element, and each point is written as a {@code use} element inside a
+     * single group that carries the style, transform and clip.  If the
+     * current paint is not a {@code Color}, or the limit on the number of
+     * symbols in the document has been reached, each marker is filled
+     * individually instead.
+     *
+     * @param marker  the marker shape ({@code null} not permitted).
+     * @param xs  the x-coordinates ({@code null} not permitted).
+     * @param ys  the y-coordinates ({@code null} not permitted).
+     * @param n  the number of points (in the range 0 to the length of the
+     *     shorter array).
+     *
+     * @since 5.0.8
+     */
+    public void drawMarkers(Shape marker, double[] xs, double[] ys, int n) {
+        Args.nullNotPermitted(marker, "marker");
+        Args.nullNotPermitted(xs, "xs");
+        Args.nullNotPermitted(ys, "ys");
+        Args.requireInRange(n, "n", 0, Math.min(xs.length, ys.length));
+        if (n == 0 || isInvisible()) {
+            return;
+        }
+        // gradients are defined in user space, so they would be translated
+        // along with each use element
+        String id = this.paint instanceof Color ? getMarkerSymbolId(marker)
+                : null;
+        if (id == null) {
+            for (int i = 0; i < n; i++) {
+                fill(AffineTransform.getTranslateInstance(xs[i], ys[i])
+                        .createTransformedShape(marker));
+            }
+            return;
+        }
+        prepareForElement();
+        this.sb.append("<g");
+        appendOptionalElementIDFromHint(this.sb);
+        appendPresentationAttributes(getSVGFillStyle());
+        this.sb.append('>');
+        for (int i = 0; i < n; i++) {
+            this.sb.append("<use xlink:href='#").append(id).append("' x='")
+                    .append(geomDP(xs[i])).append("' y='")
+                    .append(geomDP(ys[i])).append("'/>");
+        }
+        this.sb.append("</g>");
+    }
+
+    /**
+     * Returns the id of the symbol for a marker shape (with no style),
+     * registering a new symbol if the marker has not been seen before and
+     * the limit on the number of symbols has not been reached.
+     *
+     * @param marker  the marker shape ({@code null} not permitted).
+     *
+     * @return The symbol id (or {@code null} if the limit has been reached).
+     */
+    private String getMarkerSymbolId(Shape marker) {
+        StringBuilder b = new StringBuilder();
+        if (marker instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) marker;
+            b.append("<rect x='").append(geomDP(r.getX())).append("' y='")
+                    .append(geomDP(r.getY())).append("' width='")
+                    .append(geomDP(r.getWidth())).append("' height='")
+                    .append(geomDP(r.getHeight())).append("'/>");
+        } else if (marker instanceof Ellipse2D) {
+            Ellipse2D e = (Ellipse2D) marker;
+            b.append("<ellipse cx='").append(geomDP(e.getCenterX()))
+                    .append("' cy='").append(geomDP(e.getCenterY()))
+                    .append("' rx='").append(geomDP(e.getWidth() / 2.0))
+                    .append("' ry='").append(geomDP(e.getHeight() / 2.0))
+                    .append("'/>");
+        } else {
+            b.append("<path ");
+            appendSVGPathData(b, marker.getPathIterator(null), false);
+            b.append("/>");
+        }
+        String content = b.toString();
+        String id = this.symbolIds.get(content);
+        if (id == null && this.symbolIds.size() < MAX_SYMBOL_COUNT) {
+            id = registerSymbol(content);
+        }
+        return id;
+    }
+
+    /**
+     * Registers a symbol with the specified content, to be written to the
+     * DEFS element.
+     *
+     * @param content  the content of the symbol ({@code null} not
+     *     permitted).
+     *
+     * @return The symbol id.
+     */
+    private String registerSymbol(String content) {
+        String id = createDefsId(SYMBOL_KEY_PREFIX, this.symbols.size(),
+                () -> content);
+        this.symbols.add("<symbol id='" + id + "' overflow='visible'>"
+                + content + "</symbol>");
+        this.symbolIds.put(content, id);
+        return id;
     }
 
     /**
@@ -2373,6 +4346,7 @@ public final class SVGGraphics2D extends Graphics2D {
         }
         // the rendering hints control whether the image is embedded
         // (the default) or referenced...
+        prepareForElement();
         Object hint = getRenderingHint(SVGHints.KEY_IMAGE_HANDLING);
         if (SVGHints.VALUE_IMAGE_HANDLING_REFERENCE.equals(hint)) {
             // non-default case, hint was set by caller
@@ -2395,10 +4369,7 @@ public final class SVGGraphics2D extends Graphics2D {
             if (!clipPathRef.isEmpty()) {
                 this.sb.append(' ').append(getClipPathRef());
             }
-            if (!this.transform.isIdentity()) {
-                this.sb.append(" transform='").append(getSVGTransform(
-                        this.transform)).append('\'');
-            }
+            appendTransformAttribute(this.sb);
             this.sb.append(" x='").append(geomDP(x))
                     .append("' y='").append(geomDP(y))
                     .append('\'');
@@ -2417,10 +4388,7 @@ public final class SVGGraphics2D extends Graphics2D {
             if (!clipPathRef.isEmpty()) {
                 this.sb.append(' ').append(getClipPathRef());
             }
-            if (!this.transform.isIdentity()) {
-            	this.sb.append(" transform='").append(getSVGTransform(
-                    this.transform)).append('\'');
-            }
+            appendTransformAttribute(this.sb);
             this.sb.append(" x='").append(geomDP(x))
                     .append("' y='").append(geomDP(y)).append('\'');
             this.sb.append(" width='").append(geomDP(w)).append("' height='")
@@ -2476,6 +4444,7 @@ public final class SVGGraphics2D extends Graphics2D {
     @Override
     public boolean drawImage(Image img, int x, int y, int w, int h,
             Color bgcolor, ImageObserver observer) {
+        prepareForElement();
         this.sb.append("<g");
         appendOptionalElementIDFromHint(this.sb);
         this.sb.append('>');
@@ -2693,6 +4662,72 @@ public final class SVGGraphics2D extends Graphics2D {
     public String getSVGElement(String id, boolean includeDimensions,
             ViewBox viewBox, PreserveAspectRatio preserveAspectRatio,
             MeetOrSlice meetOrSlice) {
+        StringBuilder svg = createSVGElementStart(id, includeDimensions,
+                viewBox, preserveAspectRatio, meetOrSlice);
+        svg.append(this.sb);
+        svg.append(getEndTags("</svg>"));
+        return svg.toString();
+    }
+
+    /**
+     * Writes the SVG element that has been generated by calls to this
+     * {@code Graphics2D} implementation to the specified writer, giving it
+     * the specified {@code id}.  The output is the same as the string
+     * returned by {@link #getSVGElement(String)}, but the content is copied
+     * to the writer in chunks instead of first being assembled into a single
+     * string, so that a large element is not held in memory twice.
+     *
+     * @param out  the writer ({@code null} not permitted).
+     * @param id  the element id ({@code null} permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     *
+     * @since 5.0.8
+     */
+    public void writeSVGElement(Writer out, String id) throws IOException {
+        Args.nullNotPermitted(out, "out");
+        out.append(createSVGElementStart(id, true, null, null, null));
+        char[] buffer = new char[WRITE_CHUNK_SIZE];
+        int length = this.sb.length();
+        for (int start = 0; start < length; start += WRITE_CHUNK_SIZE) {
+            int end = Math.min(start + WRITE_CHUNK_SIZE, length);
+            this.sb.getChars(start, end, buffer, 0);
+            out.write(buffer, 0, end - start);
+        }
+        out.append(getEndTags("</svg>"));
+    }
+
+    /**
+     * Discards the content generated so far, releasing the memory used to
+     * hold it.  This is used by {@link SVGReportWriter} once the content has
+     * been written, after which the instance is not used again.
+     */
+    void releaseContent() {
+        closeTransformGroup();
+        this.occlusionCuller.reset();
+        this.sb.setLength(0);
+        this.sb.trimToSize();
+    }
+
+    /**
+     * Returns the start of the SVG element (the opening tag and the DEFS
+     * element, if required) and, if an output digest is set, resets the
+     * digest and updates it with the complete element.
+     *
+     * @param id  the element id ({@code null} permitted).
+     * @param includeDimensions  include the width and height attributes?
+     * @param viewBox  the view box specification ({@code null} permitted).
+     * @param preserveAspectRatio  the value of the {@code preserveAspectRatio}
+     *     attribute ({@code null} permitted).
+     * @param meetOrSlice  the value of the meetOrSlice attribute
+     *     ({@code null} permitted).
+     *
+     * @return The start of the SVG element.
+     */
+    private StringBuilder createSVGElementStart(String id,
+            boolean includeDimensions, ViewBox viewBox,
+            PreserveAspectRatio preserveAspectRatio, MeetOrSlice meetOrSlice) {
+        flushPendingOutput();
         StringBuilder svg = new StringBuilder("<svg");
         if (id != null) {
             svg.append(" id='").append(id).append("'");
@@ -2718,32 +4753,80 @@ public final class SVGGraphics2D extends Graphics2D {
         }
         svg.append('>');
 
+        appendDefsElement(svg);
+        if (this.outputDigest != null) {
+            this.outputDigest.reset();
+            updateDigest(this.outputDigest, svg);
+            updateDigest(this.outputDigest, this.sb);
+            updateDigest(this.outputDigest, getEndTags("</svg>"));
+        }
+        return svg;
+    }
+
+    /**
+     * Appends the DEFS element to the specified builder, if there is
+     * anything to include in it.
+     *
+     * @param svg  the builder ({@code null} not permitted).
+     */
+    private void appendDefsElement(StringBuilder svg) {
         // only need to write DEFS if there is something to include
         if (isDefsOutputRequired()) {
             StringBuilder defs = new StringBuilder("<defs>");
-            for (var entry : this.gradientPaints.entrySet()) {
-                defs.append(getLinearGradientElement(entry.getValue(), entry.getKey().getPaint()));
-            }
-            for (var entry : this.linearGradientPaints.entrySet()) {
-                defs.append(getLinearGradientElement(entry.getValue(), entry.getKey().getPaint()));
-            }
-             for (var entry : this.radialGradientPaints.entrySet()) {
-                defs.append(getRadialGradientElement(entry.getValue(), entry.getKey().getPaint()));
-            }
+            this.defsRegistry.writeTo(defs);
             for (int i = 0; i < this.clipPaths.size(); i++) {
                 StringBuilder b = new StringBuilder("<clipPath id='")
-                        .append(this.defsKeyPrefix).append(CLIP_KEY_PREFIX).append(i)
-                        .append("'>");
+                        .append(this.clipPathIds.get(i)).append("'>");
                 b.append("<path ").append(this.clipPaths.get(i)).append("/>");
                 b.append("</clipPath>");
                 defs.append(b);
             }
+            for (String symbol : this.symbols) {
+                defs.append(symbol);
+            }
             defs.append("</defs>");
             svg.append(defs);
         }
-        svg.append(this.sb);
-        svg.append("</svg>");
-        return svg.toString();
+    }
+
+    /**
+     * Appends the content generated so far to the specified builder as a
+     * {@code symbol} element with the specified id, and a view box that
+     * matches the width and height of this instance.  This is used by
+     * {@link SVGSpriteSheet}.
+     *
+     * @param out  the builder ({@code null} not permitted).
+     * @param id  the symbol id ({@code null} not permitted).
+     */
+    void appendSymbolElement(StringBuilder out, String id) {
+        flushPendingOutput();
+        out.append("<symbol id='").append(id).append("' viewBox='")
+                .append(new ViewBox(0, 0, this.width, this.height)
+                .valueStr(this.geomDoubleConverter)).append("'>");
+        appendDefsElement(out);
+        out.append(this.sb).append(getEndTags("</symbol>"));
+    }
+
+    /**
+     * Updates the digest with the UTF-8 encoding of the specified characters.
+     * The characters are encoded in chunks, so that the encoded bytes for a
+     * large buffer are never held in memory at once.
+     *
+     * @param digest  the digest ({@code null} not permitted).
+     * @param cs  the characters ({@code null} not permitted).
+     */
+    private static void updateDigest(MessageDigest digest, CharSequence cs) {
+        int length = cs.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(start + DIGEST_CHUNK_SIZE, length);
+            if (end < length && Character.isHighSurrogate(cs.charAt(end - 1))) {
+                end--;  // don't split a surrogate pair
+            }
+            digest.update(StandardCharsets.UTF_8.encode(
+                    CharBuffer.wrap(cs, start, end)));
+            start = end;
+        }
     }
 
     /**
@@ -2753,8 +4836,8 @@ public final class SVGGraphics2D extends Graphics2D {
      * @return A boolean.
      */
     private boolean isDefsOutputRequired() {
-        return !(this.gradientPaints.isEmpty() && this.linearGradientPaints.isEmpty()
-                && this.radialGradientPaints.isEmpty() && this.clipPaths.isEmpty());
+        return !(this.defsRegistry.isEmpty() && this.clipPaths.isEmpty()
+                && this.symbols.isEmpty());
     }
 
     /**
@@ -2798,6 +4881,25 @@ public final class SVGGraphics2D extends Graphics2D {
         return new HashSet<>(this.elementIDs);
     }
 
+    /**
+     * Returns an element to represent a gradient paint, which must be an
+     * instance of {@code GradientPaint}, {@code LinearGradientPaint} or
+     * {@code RadialGradientPaint}.
+     *
+     * @param id  the reference id.
+     * @param paint  the gradient.
+     *
+     * @return The SVG element.
+     */
+    private String getGradientElement(String id, Paint paint) {
+        if (paint instanceof GradientPaint) {
+            return getLinearGradientElement(id, (GradientPaint) paint);
+        } else if (paint instanceof LinearGradientPaint) {
+            return getLinearGradientElement(id, (LinearGradientPaint) paint);
+        }
+        return getRadialGradientElement(id, (RadialGradientPaint) paint);
+    }
+
     /**
      * Returns an element to represent a linear gradient.  All the linear
      * gradients that are used get written to the DEFS element in the SVG.
@@ -242,6 +242,39 @@ public final class SVGHints {
      */
     public static final Object VALUE_DRAW_STRING_TYPE_VECTOR
             = "VALUE_DRAW_STRING_TYPE_VECTOR";
+
+    /**
+     * The key for the hint that controls whether elements that are provably
+     * invisible (drawn or filled with a fully transparent paint or
+     * composite, filled shapes with no area, and zero-length strokes with
+     * butt caps) are skipped.  Valid hint values are
+     * {@link #VALUE_INVISIBLE_ELEMENTS_SKIP} (the default, also used when
+     * the hint is not set) and {@link #VALUE_INVISIBLE_ELEMENTS_KEEP}.  The
+     * latter is useful when the elements are needed in the DOM (for
+     * example, for scripting).
+     *
+     * @since 5.0.8
+     */
+    public static final SVGHints.Key KEY_INVISIBLE_ELEMENTS
+            = new SVGHints.Key(10);
+
+    /**
+     * Hint value for {@code KEY_INVISIBLE_ELEMENTS} to specify that
+     * invisible elements should be skipped.
+     *
+     * @since 5.0.8
+     */
+    public static final Object VALUE_INVISIBLE_ELEMENTS_SKIP
+            = "VALUE_INVISIBLE_ELEMENTS_SKIP";
+
+    /**
+     * Hint value for {@code KEY_INVISIBLE_ELEMENTS} to specify that
+     * invisible elements should be written to the output.
+     *
+     * @since 5.0.8
+     */
+    public static final Object VALUE_INVISIBLE_ELEMENTS_KEEP
+            = "VALUE_INVISIBLE_ELEMENTS_KEEP";
     
     /**
      * A list of keys that are treated as synonyms for KEY_BEGIN_GROUP
@@ -591,6 +624,10 @@ public final class SVGHints {
                     return val == null 
                             || VALUE_DRAW_STRING_TYPE_STANDARD.equals(val)
                             || VALUE_DRAW_STRING_TYPE_VECTOR.equals(val);
+                case 10: // KEY_INVISIBLE_ELEMENTS
+                    return val == null
+                            || VALUE_INVISIBLE_ELEMENTS_SKIP.equals(val)
+                            || VALUE_INVISIBLE_ELEMENTS_KEEP.equals(val);
                 default:
                     throw new RuntimeException("Not possible!");
             }
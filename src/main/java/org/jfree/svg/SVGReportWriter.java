@@ -0,0 +1,251 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import org.jfree.svg.util.Args;
+
+/**
+ * Writes an HTML report containing any number of SVG elements.  Unlike
+ * {@link SVGUtils#writeToHTML(File, String, String)}, each element is
+ * streamed to the output as soon as it is passed to one of the
+ * {@code write} methods, and the content of the {@link SVGGraphics2D}
+ * instance is then discarded, so memory use does not grow with the size of
+ * the report.  Instances created with {@link #createGraphics(double, double)}
+ * register their gradients and clip paths in a shared
+ * {@link SVGDefsLibrary}, which is written once at the end of the report.
+ * <p>
+ * A typical usage is:
+ * <pre>
+ * try (SVGReportWriter report = new SVGReportWriter(file, "Report")) {
+ *     for (Chart chart : charts) {
+ *         report.write(() -&gt; {
+ *             SVGGraphics2D g2 = report.createGraphics(600, 400);
+ *             chart.draw(g2);
+ *             return g2;
+ *         });
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 5.0.8
+ */
+public final class SVGReportWriter implements Closeable {
+
+    /** The output. */
+    private final Writer writer;
+
+    /** The library for the definitions shared by the SVG elements. */
+    private final SVGDefsLibrary defsLibrary;
+
+    /** The number of SVG elements written so far. */
+    private int count;
+
+    /** A flag that indicates whether the report has been closed. */
+    private boolean closed;
+
+    /**
+     * Creates a new report writer for the specified file (using UTF-8
+     * encoding) and writes the start of the HTML document.
+     *
+     * @param file  the file ({@code null} not permitted).
+     * @param title  the title ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    public SVGReportWriter(File file, String title) throws IOException {
+        this(createWriter(file), title);
+    }
+
+    /**
+     * Creates a new report writer for the specified writer and writes the
+     * start of the HTML document.  The writer is closed when the report is
+     * closed.
+     *
+     * @param writer  the writer ({@code null} not permitted).
+     * @param title  the title ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    public SVGReportWriter(Writer writer, String title) throws IOException {
+        Args.nullNotPermitted(writer, "writer");
+        Args.nullNotPermitted(title, "title");
+        this.writer = writer;
+        this.defsLibrary = new SVGDefsLibrary();
+        writer.write("<!DOCTYPE html>\n");
+        writer.write("<html>\n");
+        writer.write("<head>\n");
+        writer.write("<title>" + SVGUtils.escapeForXML(title) + "</title>\n");
+        writer.write("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\" />\n");
+        writer.write("</head>\n");
+        writer.write("<body>\n");
+    }
+
+    /**
+     * Creates a buffered UTF-8 writer for the specified file.
+     *
+     * @param file  the file ({@code null} not permitted).
+     *
+     * @return The writer.
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    private static Writer createWriter(File file) throws IOException {
+        Args.nullNotPermitted(file, "file");
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the library for the definitions shared by the SVG elements in
+     * this report.
+     *
+     * @return The library (never {@code null}).
+     */
+    public SVGDefsLibrary getDefsLibrary() {
+        return this.defsLibrary;
+    }
+
+    /**
+     * Returns the number of SVG elements written so far.
+     *
+     * @return The count.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Creates a new {@code SVGGraphics2D} instance that registers its
+     * gradients and clip paths in the library for this report.
+     *
+     * @param width  the width of the SVG element.
+     * @param height  the height of the SVG element.
+     *
+     * @return The graphics instance (never {@code null}).
+     */
+    public SVGGraphics2D createGraphics(double width, double height) {
+        SVGGraphics2D g2 = new SVGGraphics2D(width, height);
+        g2.setDefsLibrary(this.defsLibrary);
+        return g2;
+    }
+
+    /**
+     * Writes the SVG element for the specified graphics instance to the
+     * report and then discards its content, so the instance should not be
+     * used again.
+     *
+     * @param g2  the graphics instance ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    public void write(SVGGraphics2D g2) throws IOException {
+        Args.nullNotPermitted(g2, "g2");
+        if (this.closed) {
+            throw new IllegalStateException("The report has been closed.");
+        }
+        g2.writeSVGElement(this.writer, null);
+        this.writer.write('\n');
+        g2.releaseContent();
+        this.count++;
+    }
+
+    /**
+     * Obtains a graphics instance from the supplier and writes its SVG
+     * element to the report.  Since the instance is created on demand and
+     * not referenced after it is written, only one chart is held in memory
+     * at a time.
+     *
+     * @param supplier  the supplier ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    public void write(Supplier<? extends SVGGraphics2D> supplier)
+            throws IOException {
+        Args.nullNotPermitted(supplier, "supplier");
+        write(supplier.get());
+    }
+
+    /**
+     * Writes the SVG elements for all the graphics instances returned by the
+     * specified iterable, one at a time.  If the iterable creates the
+     * instances lazily, only one chart is held in memory at a time.
+     *
+     * @param charts  the graphics instances ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    public void writeAll(Iterable<? extends SVGGraphics2D> charts)
+            throws IOException {
+        Args.nullNotPermitted(charts, "charts");
+        for (SVGGraphics2D g2 : charts) {
+            write(g2);
+        }
+    }
+
+    /**
+     * Writes the shared definitions (if there are any) and the end of the
+     * HTML document, then closes the writer.  Calling this method again has
+     * no effect.
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (!this.defsLibrary.isEmpty()) {
+                this.writer.write(this.defsLibrary.getSVGElement());
+                this.writer.write('\n');
+            }
+            this.writer.write("</body>\n");
+            this.writer.write("</html>\n");
+            this.writer.flush();
+        } finally {
+            this.writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.jfree.svg.util.Args;
+
+/**
+ * Collects the output of many {@link SVGGraphics2D} instances into a single
+ * SVG document (a sprite sheet), with each one written as a
+ * {@code symbol} element.  Clients can then refer to an individual symbol
+ * with a {@code use} element, for example
+ * {@code <svg><use href='sprites.svg#icon1'/></svg>}, so that one cached
+ * file replaces many small ones.  Instances created with
+ * {@link #createGraphics(double, double)} register their gradients and clip
+ * paths in a shared {@link SVGDefsLibrary}, so that each definition appears
+ * only once in the document.
+ * <p>
+ * This class is thread-safe, so symbols can be rendered and added on
+ * different threads.
+ *
+ * @since 5.0.8
+ */
+public final class SVGSpriteSheet {
+
+    /** The library for the definitions shared by the symbols. */
+    private final SVGDefsLibrary defsLibrary;
+
+    /** The symbol elements. */
+    private final StringBuilder symbols = new StringBuilder();
+
+    /** The ids of the symbols added so far. */
+    private final Set<String> ids = new HashSet<>();
+
+    /**
+     * Creates a new empty sprite sheet, with the default id prefix for the
+     * shared definitions.
+     */
+    public SVGSpriteSheet() {
+        this.defsLibrary = new SVGDefsLibrary();
+    }
+
+    /**
+     * Creates a new empty sprite sheet with the specified id prefix for the
+     * shared definitions.  A distinct prefix is required when more than one
+     * sprite sheet is included in the same page.
+     *
+     * @param defsIdPrefix  the id prefix ({@code null} not permitted).
+     */
+    public SVGSpriteSheet(String defsIdPrefix) {
+        this.defsLibrary = new SVGDefsLibrary(defsIdPrefix);
+    }
+
+    /**
+     * Returns the library for the definitions shared by the symbols in this
+     * sprite sheet.
+     *
+     * @return The library (never {@code null}).
+     */
+    public SVGDefsLibrary getDefsLibrary() {
+        return this.defsLibrary;
+    }
+
+    /**
+     * Returns the number of symbols added so far.
+     *
+     * @return The count.
+     */
+    public synchronized int getCount() {
+        return this.ids.size();
+    }
+
+    /**
+     * Creates a new {@code SVGGraphics2D} instance that registers its
+     * gradients and clip paths in the library for this sprite sheet.
+     *
+     * @param width  the width of the symbol's view box.
+     * @param height  the height of the symbol's view box.
+     *
+     * @return The graphics instance (never {@code null}).
+     */
+    public SVGGraphics2D createGraphics(double width, double height) {
+        SVGGraphics2D g2 = new SVGGraphics2D(width, height);
+        g2.setDefsLibrary(this.defsLibrary);
+        return g2;
+    }
+
+    /**
+     * Adds the content of the specified graphics instance to the sprite
+     * sheet as a symbol with the specified id, and a view box that matches
+     * the width and height of the graphics instance.  The content of the
+     * graphics instance is then discarded, so the instance should not be
+     * used again.
+     *
+     * @param id  the symbol id ({@code null} not permitted).
+     * @param g2  the graphics instance ({@code null} not permitted).
+     *
+     * @throws IllegalArgumentException if a symbol with the same id has
+     *     already been added.
+     */
+    public void add(String id, SVGGraphics2D g2) {
+        Args.nullNotPermitted(id, "id");
+        Args.nullNotPermitted(g2, "g2");
+        synchronized (this) {
+            if (!this.ids.add(id)) {
+                throw new IllegalArgumentException("Duplicate symbol id '"
+                        + id + "'.");
+            }
+        }
+        StringBuilder b = new StringBuilder();
+        g2.appendSymbolElement(b, id);
+        g2.releaseContent();
+        synchronized (this) {
+            this.symbols.append(b);
+        }
+    }
+
+    /**
+     * Returns the SVG element for the sprite sheet, containing the shared
+     * definitions and all the symbols added so far.
+     *
+     * @return The SVG element (never {@code null}).
+     */
+    public synchronized String getSVGElement() {
+        StringBuilder b = new StringBuilder("<svg")
+                .append(" xmlns='http://www.w3.org/2000/svg'")
+                .append(" xmlns:xlink='http://www.w3.org/1999/xlink'")
+                .append(" xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg'>");
+        if (!this.defsLibrary.isEmpty()) {
+            b.append(this.defsLibrary.getDefsElement());
+        }
+        return b.append(this.symbols).append("</svg>").toString();
+    }
+
+}
@@ -0,0 +1,184 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+/**
+ * Tracks a run of consecutive elements that share the same presentation
+ * attributes (style, transform and clip-path).  This is used internally by
+ * {@link SVGGraphics2D} when attribute hoisting is enabled: as soon as a
+ * second element with the same attributes follows the first, the attributes
+ * are removed from the elements and written once on an enclosing {@code g}
+ * element, which is closed when the run ends.  An instance is shared by a
+ * {@code SVGGraphics2D} and its children, since they write to the same
+ * buffer.
+ */
+final class SharedAttributeRun {
+
+    /** The offset of the element currently being written (or -1). */
+    private int elementStart = -1;
+
+    /** The offset of the attributes of the current element (or -1). */
+    private int attributesStart = -1;
+
+    /** The end offset of the attributes of the current element. */
+    private int attributesEnd;
+
+    /** The shared attributes for the run ({@code null} if no run). */
+    private String attributes;
+
+    /** The offset of the first element in the run. */
+    private int runStart;
+
+    /** The offset of the attributes of the first element in the run. */
+    private int firstAttributesStart;
+
+    /** Is the first element in the run wrapped in its own group? */
+    private boolean firstWrapped;
+
+    /** The end offset of the last element in the run. */
+    private int runEnd;
+
+    /** Have the attributes been hoisted into an enclosing group? */
+    private boolean hoisted;
+
+    /**
+     * Creates a new instance with no run.
+     */
+    SharedAttributeRun() {
+    }
+
+    /**
+     * Records that an element is about to be written at the specified
+     * offset.
+     *
+     * @param offset  the offset.
+     */
+    void startElement(int offset) {
+        this.elementStart = offset;
+        this.attributesStart = -1;
+    }
+
+    /**
+     * Records the location of the presentation attributes for the element
+     * that is being written.  Only the first call for each element is
+     * recorded.
+     *
+     * @param start  the start offset.
+     * @param end  the end offset.
+     */
+    void recordAttributes(int start, int end) {
+        if (this.elementStart >= 0 && this.attributesStart < 0) {
+            this.attributesStart = start;
+            this.attributesEnd = end;
+        }
+    }
+
+    /**
+     * Completes the element that is being written (which extends to the end
+     * of the buffer), either adding it to the current run, or ending the
+     * current run and starting a new one.
+     *
+     * @param sb  the buffer ({@code null} not permitted).
+     */
+    void endElement(StringBuilder sb) {
+        if (this.elementStart < 0) {
+            return;
+        }
+        int start = this.elementStart;
+        int end = sb.length();
+        this.elementStart = -1;
+        String attrs = null;
+        boolean wrapped = false;
+        if (this.attributesStart >= start && end > start) {
+            attrs = sb.substring(this.attributesStart, this.attributesEnd);
+            wrapped = this.attributesStart == start + 2
+                    && sb.charAt(start + 1) == 'g'
+                    && sb.charAt(this.attributesEnd) == '>'
+                    && end - 4 > this.attributesEnd
+                    && "</g>".contentEquals(sb.subSequence(end - 4, end));
+        }
+        if (this.attributes != null && attrs != null && start == this.runEnd
+                && attrs.equals(this.attributes)) {
+            // remove the attributes from the new element first, so that
+            // the offsets for the first element remain valid
+            if (wrapped) {
+                sb.setLength(end - 4);
+                sb.delete(start, this.attributesEnd + 1);
+            } else {
+                sb.delete(this.attributesStart, this.attributesEnd);
+            }
+            if (!this.hoisted) {
+                if (this.firstWrapped) {
+                    // the element's own group becomes the enclosing group
+                    sb.delete(this.runEnd - 4, this.runEnd);
+                } else {
+                    sb.delete(this.firstAttributesStart,
+                            this.firstAttributesStart + attrs.length());
+                    sb.insert(this.runStart, "<g" + attrs + ">");
+                }
+                this.hoisted = true;
+            }
+            this.runEnd = sb.length();
+            return;
+        }
+        int shift = close(sb);
+        if (attrs != null && end > start) {
+            this.attributes = attrs;
+            this.runStart = start + shift;
+            this.firstAttributesStart = this.attributesStart + shift;
+            this.firstWrapped = wrapped;
+            this.runEnd = end + shift;
+        }
+    }
+
+    /**
+     * Ends the current run (if any), closing the enclosing group if the
+     * attributes were hoisted.
+     *
+     * @param sb  the buffer ({@code null} not permitted).
+     *
+     * @return The number of characters inserted into the buffer.
+     */
+    int close(StringBuilder sb) {
+        int shift = 0;
+        if (this.attributes != null && this.hoisted) {
+            sb.insert(this.runEnd, "</g>");
+            shift = 4;
+        }
+        this.attributes = null;
+        this.hoisted = false;
+        return shift;
+    }
+
+}
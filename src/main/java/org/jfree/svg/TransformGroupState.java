@@ -0,0 +1,136 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+package org.jfree.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the {@code g} elements that are currently open in the output
+ * when {@link SVGGraphics2D} writes transforms as groups (see
+ * {@link SVGGraphics2D#setTransformGroups(boolean)}).  The open groups are
+ * nested, and each one corresponds to one or more {@link TransformStep}s.
+ * An instance is shared by a {@code SVGGraphics2D} and its children, since
+ * they write to the same buffer.
+ */
+final class TransformGroupState {
+
+    /** The last step covered by each open group, outermost first. */
+    private final List<TransformStep> open = new ArrayList<>();
+
+    /**
+     * Creates a new instance with no open group.
+     */
+    TransformGroupState() {
+    }
+
+    /**
+     * Returns the number of open groups.
+     *
+     * @return The number of open groups.
+     */
+    int getDepth() {
+        return this.open.size();
+    }
+
+    /**
+     * Returns {@code true} if the open groups match the specified step
+     * exactly, and {@code false} otherwise.
+     *
+     * @param step  the step ({@code null} permitted, for the identity
+     *     transform).
+     *
+     * @return A boolean.
+     */
+    boolean isOpenWith(TransformStep step) {
+        if (step == null) {
+            return this.open.isEmpty();
+        }
+        return !this.open.isEmpty()
+                && this.open.get(this.open.size() - 1) == step;
+    }
+
+    /**
+     * Writes the end tags for the open groups that are not part of the
+     * sequence ending with {@code step}, then opens a single group for the
+     * remaining steps in the sequence (if any).
+     *
+     * @param step  the step ({@code null} permitted, for the identity
+     *     transform).
+     * @param out  the output ({@code null} not permitted).
+     */
+    void moveTo(TransformStep step, StringBuilder out) {
+        int keep = this.open.size();
+        while (keep > 0) {
+            TransformStep last = this.open.get(keep - 1);
+            if (step != null && step.getAncestor(last.getDepth()) == last) {
+                break;
+            }
+            keep--;
+        }
+        while (this.open.size() > keep) {
+            out.append("</g>");
+            this.open.remove(this.open.size() - 1);
+        }
+        TransformStep from = keep > 0 ? this.open.get(keep - 1) : null;
+        if (step == null || step == from) {
+            return;
+        }
+        List<String> values = new ArrayList<>();
+        for (TransformStep s = step; s != from; s = s.getParent()) {
+            values.add(s.getValue());
+        }
+        out.append("<g transform='");
+        for (int i = values.size() - 1; i >= 0; i--) {
+            out.append(values.get(i));
+            if (i > 0) {
+                out.append(' ');
+            }
+        }
+        out.append("'>");
+        this.open.add(step);
+    }
+
+    /**
+     * Writes the end tags for all the open groups.
+     *
+     * @param out  the output ({@code null} not permitted).
+     */
+    void close(StringBuilder out) {
+        for (int i = 0; i < this.open.size(); i++) {
+            out.append("</g>");
+        }
+        this.open.clear();
+    }
+
+}
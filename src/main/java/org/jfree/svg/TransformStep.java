@@ -0,0 +1,139 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+
+package org.jfree.svg;
+
+import java.awt.geom.AffineTransform;
+
+/**
+ * One step in the sequence of transform calls (such as {@code translate},
+ * {@code scale} or {@code rotate}) that produced the current transform of
+ * an {@link SVGGraphics2D} instance, when transforms are written as groups
+ * (see {@link SVGGraphics2D#setTransformGroups(boolean)}).  Each step
+ * refers to the step before it, so a sequence can be shared by an instance
+ * and its children, and each step becomes a nested {@code g} element in
+ * the output.  Instances are immutable.
+ */
+final class TransformStep {
+
+    /** The previous step ({@code null} for the first step). */
+    private final TransformStep parent;
+
+    /** The transform after this step has been applied. */
+    private final AffineTransform transform;
+
+    /** The SVG transform function for this step. */
+    private final String value;
+
+    /** The number of steps up to and including this one. */
+    private final int depth;
+
+    /**
+     * Creates a new step.
+     *
+     * @param parent  the previous step ({@code null} permitted).
+     * @param transform  the transform after this step ({@code null} not
+     *     permitted).
+     * @param value  the SVG transform function for this step, for example
+     *     {@code "translate(10.0,20.0)"} ({@code null} not permitted).
+     */
+    TransformStep(TransformStep parent, AffineTransform transform,
+            String value) {
+        this.parent = parent;
+        this.transform = new AffineTransform(transform);
+        this.value = value;
+        this.depth = parent == null ? 1 : parent.depth + 1;
+    }
+
+    /**
+     * Returns the previous step.
+     *
+     * @return The previous step (possibly {@code null}).
+     */
+    TransformStep getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Returns the SVG transform function for this step.
+     *
+     * @return The transform function (never {@code null}).
+     */
+    String getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the number of steps up to and including this one.
+     *
+     * @return The depth (at least 1).
+     */
+    int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * Returns the step at the specified depth in the sequence ending with
+     * this step, or {@code null} if the depth is greater than the depth of
+     * this step.
+     *
+     * @param depth  the depth.
+     *
+     * @return The step (possibly {@code null}).
+     */
+    TransformStep getAncestor(int depth) {
+        TransformStep step = this;
+        while (step != null && step.depth > depth) {
+            step = step.parent;
+        }
+        return step;
+    }
+
+    /**
+     * Returns the step in the sequence ending with {@code step} after which
+     * the transform was equal to {@code t}, or {@code null} if there is no
+     * such step.  This is used to recognise a transform being restored.
+     *
+     * @param step  the last step ({@code null} permitted).
+     * @param t  the transform ({@code null} not permitted).
+     *
+     * @return The step (possibly {@code null}).
+     */
+    static TransformStep find(TransformStep step, AffineTransform t) {
+        while (step != null && !step.transform.equals(t)) {
+            step = step.parent;
+        }
+        return step;
+    }
+
+}
@@ -0,0 +1,92 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ *
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ *
+ * https://www.jfree.org/jfreesvg
+ *
+ */
+
+package org.jfree.svg.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map with a maximum size.  When a new entry would take the map over the
+ * maximum size, the least recently accessed entry is removed.  This class is
+ * used internally by {@code SVGGraphics2D} for caches and dictionaries that
+ * must not grow without limit.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ *
+ * @since 5.0.8
+ */
+public final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum number of entries. */
+    private final int maxSize;
+
+    /**
+     * Creates a new map with the specified maximum size.
+     *
+     * @param maxSize  the maximum number of entries (must be positive).
+     */
+    public BoundedMap(int maxSize) {
+        super(16, 0.75f, true);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Require 'maxSize' ("
+                    + maxSize + ") to be positive.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the maximum number of entries in this map.
+     *
+     * @return The maximum size.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Returns {@code true} if the eldest entry should be removed, which is
+     * the case when the size of the map exceeds the maximum size.
+     *
+     * @param eldest  the least recently accessed entry.
+     *
+     * @return A boolean.
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > this.maxSize;
+    }
+
+}
@@ -38,11 +38,12 @@ import java.util.function.DoubleFunction;
 
 /**
  * A function that converts double values to a string representation with 
- * a maximum number of decimal places.
+ * a maximum number of decimal places.  Instances of this class are
+ * thread-safe (each thread uses its own formatter).
  */
 public class DoubleConverter implements DoubleFunction<String> {
 
-    private final DecimalFormat formatter;
+    private final ThreadLocal<DecimalFormat> formatter;
     
     /**
      * Creates a new function that converts double values to strings with
@@ -53,7 +54,9 @@ public class DoubleConverter implements DoubleFunction<String> {
     public DoubleConverter(int dp) {
         Args.requireInRange(dp, "dp", 1, 10);
         DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(Locale.US);
-        this.formatter = new DecimalFormat("0." + "##########".substring(0, dp), dfs);
+        String pattern = "0." + "##########".substring(0, dp);
+        this.formatter = ThreadLocal.withInitial(
+                () -> new DecimalFormat(pattern, dfs));
     }
 
     /**
@@ -65,7 +68,7 @@ public class DoubleConverter implements DoubleFunction<String> {
      */
     @Override
     public String apply(double value) {
-        return this.formatter.format(value);
+        return this.formatter.get().format(value);
     }
 
 }
@@ -117,6 +117,8 @@ public final class GradientPaintKey {
         hash = 47 * hash + this.paint.getPoint2().hashCode();
         hash = 47 * hash + this.paint.getColor1().hashCode();
         hash = 47 * hash + this.paint.getColor2().hashCode();
+        hash = 47 * hash + this.paint.getTransparency();
+        hash = 47 * hash + (this.paint.isCyclic() ? 1 : 0);
         return hash;
     }
 
@@ -97,6 +97,9 @@ public class LinearGradientPaintKey {
         if (!Arrays.equals(this.paint.getFractions(), that.getFractions())) {
             return false;
         }
+        if (this.paint.getCycleMethod() != that.getCycleMethod()) {
+            return false;
+        }
         return true;
     }
     
@@ -112,6 +115,7 @@ public class LinearGradientPaintKey {
         hash = 47 * hash + this.paint.getEndPoint().hashCode();
         hash = 47 * hash + Arrays.hashCode(this.paint.getColors());
         hash = 47 * hash + Arrays.hashCode(this.paint.getFractions());
+        hash = 47 * hash + this.paint.getCycleMethod().ordinal();
         return hash;
     }
 
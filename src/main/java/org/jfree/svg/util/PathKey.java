@@ -0,0 +1,158 @@
+/* ===================================================
+ * JFreeSVG : an SVG library for the Java(tm) platform
+ * ===================================================
+ * 
+ * (C)opyright 2013-present, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://www.jfree.org/jfreesvg/index.html
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates. 
+ * Other names may be trademarks of their respective owners.]
+ * 
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * commercial license can be purchased.  For details, please see visit the
+ * JFreeSVG home page:
+ * 
+ * https://www.jfree.org/jfreesvg
+ * 
+ */
+
+package org.jfree.svg.util;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * A key that represents the geometry of a {@code Shape} (the winding rule
+ * and the segments returned by its path iterator) and can be used as the key
+ * for a {@code Map} (including a {@code HashMap}).  This class is used
+ * internally by {@code SVGGraphics2D} to track and re-use clip path
+ * definitions without generating the path data for each lookup.
+ *
+ * @since 5.0.8
+ */
+public final class PathKey {
+
+    /** The winding rule. */
+    private final int windingRule;
+
+    /** The segment types. */
+    private final byte[] types;
+
+    /** The coordinates for all the segments. */
+    private final double[] coords;
+
+    /** The hash code (precomputed, since the arrays can be large). */
+    private final int hash;
+
+    /**
+     * Creates a new key for the specified shape.
+     *
+     * @param shape  the shape ({@code null} not permitted).
+     */
+    public PathKey(Shape shape) {
+        Args.nullNotPermitted(shape, "shape");
+        PathIterator iterator = shape.getPathIterator(null);
+        this.windingRule = iterator.getWindingRule();
+        byte[] t = new byte[16];
+        double[] c = new double[32];
+        double[] segment = new double[6];
+        int count = 0;
+        int size = 0;
+        while (!iterator.isDone()) {
+            int type = iterator.currentSegment(segment);
+            int n = coordCount(type);
+            if (count == t.length) {
+                t = Arrays.copyOf(t, count * 2);
+            }
+            if (size + n > c.length) {
+                c = Arrays.copyOf(c, Math.max(c.length * 2, size + n));
+            }
+            t[count++] = (byte) type;
+            System.arraycopy(segment, 0, c, size, n);
+            size += n;
+            iterator.next();
+        }
+        this.types = Arrays.copyOf(t, count);
+        this.coords = Arrays.copyOf(c, size);
+        int h = 7;
+        h = 31 * h + this.windingRule;
+        h = 31 * h + Arrays.hashCode(this.types);
+        h = 31 * h + Arrays.hashCode(this.coords);
+        this.hash = h;
+    }
+
+    /**
+     * Returns the number of coordinates for a segment of the specified type.
+     *
+     * @param type  the segment type.
+     *
+     * @return The number of coordinates.
+     */
+    private static int coordCount(int type) {
+        switch (type) {
+        case (PathIterator.SEG_MOVETO):
+        case (PathIterator.SEG_LINETO):
+            return 2;
+        case (PathIterator.SEG_QUADTO):
+            return 4;
+        case (PathIterator.SEG_CUBICTO):
+            return 6;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Checks this instance for equality with an arbitrary object.
+     *
+     * @param obj  the object to test against ({@code null} permitted).
+     *
+     * @return A boolean.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PathKey)) {
+            return false;
+        }
+        PathKey that = (PathKey) obj;
+        if (this.hash != that.hash) {
+            return false;
+        }
+        if (this.windingRule != that.windingRule) {
+            return false;
+        }
+        if (!Arrays.equals(this.types, that.types)) {
+            return false;
+        }
+        return Arrays.equals(this.coords, that.coords);
+    }
+
+    /**
+     * Returns a hash code for this instance.
+     *
+     * @return A hash code.
+     */
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+}
@@ -86,7 +86,10 @@ public class RadialGradientPaintKey {
         if (!this.paint.getCenterPoint().equals(that.getCenterPoint())) {
             return false;
         }
-        if (!this.paint.getFocusPoint().equals(that.getCenterPoint())) {
+        if (!this.paint.getFocusPoint().equals(that.getFocusPoint())) {
+            return false;
+        }
+        if (this.paint.getRadius() != that.getRadius()) {
             return false;
         }
         if (!Arrays.equals(this.paint.getColors(), that.getColors())) {
@@ -95,6 +98,9 @@ public class RadialGradientPaintKey {
         if (!Arrays.equals(this.paint.getFractions(), that.getFractions())) {
             return false;
         }
+        if (this.paint.getCycleMethod() != that.getCycleMethod()) {
+            return false;
+        }
         return true;
     }
     
@@ -111,6 +117,7 @@ public class RadialGradientPaintKey {
         hash = 47 * hash + Float.floatToIntBits(this.paint.getRadius());
         hash = 47 * hash + Arrays.hashCode(this.paint.getColors());
         hash = 47 * hash + Arrays.hashCode(this.paint.getFractions());
+        hash = 47 * hash + this.paint.getCycleMethod().ordinal();
         return hash;
     }
 
@@ -34,12 +34,21 @@ package org.jfree.svg;
 
 import java.awt.*;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.jupiter.api.Test;
 
@@ -134,7 +143,7 @@ public class TestGeneral {
         path.lineTo(30.0, 40.0);
         g2.draw(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
     
     @Test
@@ -147,7 +156,7 @@ public class TestGeneral {
         g2.setRenderingHint(SVGHints.KEY_ELEMENT_ID, "UNIQUE_ELEMENT_ID_1");
         g2.draw(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g id='UNIQUE_ELEMENT_ID_1' style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path id='UNIQUE_ELEMENT_ID_1' style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
     
     @Test
@@ -160,7 +169,7 @@ public class TestGeneral {
         path.lineTo(30.0, 40.0);
         g2.draw(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' transform='matrix(1.0,0.0,0.0,1.0,2.0,3.0)'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' transform='matrix(1.0,0.0,0.0,1.0,2.0,3.0)' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
 
     /** 
@@ -178,7 +187,27 @@ public class TestGeneral {
         g2.draw(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
 "<defs><clipPath id='PREclip-0'><path d='M10.0,15.0L30.0,15.0L30.0,40.0L10.0,40.0L10.0,15.0Z'/></clipPath></defs>" +
-"<g style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' clip-path='url(#PREclip-0)'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='stroke-width:2.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linejoin:bevel;stroke-miterlimit:3.0;fill:none' clip-path='url(#PREclip-0)' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that a clip region with the same geometry as an earlier one
+     * reuses the same clip path definition.
+     */
+    @Test
+    public void checkClipPathReused() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setDefsKeyPrefix("PRE");
+        g2.setClip(new Rectangle(10, 15, 20, 25));
+        g2.fill(new Rectangle(0, 0, 5, 5));
+        g2.setClip(new Ellipse2D.Double(10, 15, 20, 25));
+        g2.fill(new Rectangle(0, 0, 5, 5));
+        g2.setClip(new Rectangle2D.Double(10, 15, 20, 25));
+        g2.fill(new Rectangle(0, 0, 5, 5));
+        String svg = g2.getSVGElement();
+        assertEquals(2, svg.split("<clipPath ").length - 1);
+        assertEquals(2, svg.split("url\\(#PREclip-0\\)").length - 1);
+        assertEquals(1, svg.split("url\\(#PREclip-1\\)").length - 1);
     }
 
     @Test
@@ -190,7 +219,7 @@ public class TestGeneral {
         path.lineTo(30.0, 40.0);
         g2.fill(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g style='fill:rgb(0,0,255);stroke:none'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='fill:rgb(0,0,255);stroke:none' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
 
     @Test
@@ -203,7 +232,7 @@ public class TestGeneral {
         g2.setRenderingHint(SVGHints.KEY_ELEMENT_ID, "UNIQUE_ELEMENT_ID_1");
         g2.fill(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g id='UNIQUE_ELEMENT_ID_1' style='fill:rgb(0,0,255);stroke:none'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path id='UNIQUE_ELEMENT_ID_1' style='fill:rgb(0,0,255);stroke:none' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
 
     @Test
@@ -216,7 +245,7 @@ public class TestGeneral {
         path.lineTo(30.0, 40.0);
         g2.fill(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
-"<g style='fill:rgb(255,0,0);stroke:none' transform='matrix(2.0,0.0,0.0,3.0,0.0,0.0)'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='fill:rgb(255,0,0);stroke:none' transform='matrix(2.0,0.0,0.0,3.0,0.0,0.0)' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
 
     @Test
@@ -231,7 +260,7 @@ public class TestGeneral {
         g2.fill(path);
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
 "<defs><clipPath id='DEFclip-0'><path d='M10.0,11.0L22.0,11.0L22.0,24.0L10.0,24.0L10.0,11.0Z'/></clipPath></defs>" +
-"<g style='fill:rgb(255,0,0);stroke:none' clip-path='url(#DEFclip-0)'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+"<path style='fill:rgb(255,0,0);stroke:none' clip-path='url(#DEFclip-0)' d='M10.0,20.0L30.0,40.0'/></svg>", g2.getSVGElement());
     }
 
     @Test
@@ -503,6 +532,999 @@ public class TestGeneral {
         assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'><defs><radialGradient id='DEFS_PREFIXrgp0' gradientUnits='userSpaceOnUse' cx='50.0' cy='50.0' r='25.0' fx='50.0' fy='50.0'><stop offset='0.0%' stop-color='rgb(255,0,0)'/><stop offset='20.0%' stop-color='rgb(255,255,255)'/><stop offset='100.0%' stop-color='rgb(0,0,255)'/></radialGradient></defs><rect x='10.0' y='20.0' width='30.0' height='40.0' style='fill:url(#DEFS_PREFIXrgp0)'/></svg>", g2.getSVGElement());
     }
 
+    /**
+     * Consecutive rectangle fills with the same paint are written as a
+     * single path when batching is enabled.
+     */
+    @Test
+    public void checkFillRectangle2DBatched() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setBatchRectFills(true);
+        g2.setPaint(Color.GREEN);
+        g2.fill(new Rectangle2D.Double(10.0, 20.0, 30.0, 40.0));
+        g2.fillRect(50, 20, 30, 40);
+        g2.setPaint(Color.BLUE);
+        g2.fillRect(90, 20, 5, 5);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<path style='fill:rgb(0,255,0)' d='M10.0 20.0h30.0v40.0h-30.0zM50.0 20.0h30.0v40.0h-30.0z'/>" +
+"<path style='fill:rgb(0,0,255)' d='M90.0 20.0h5.0v5.0h-5.0z'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Fills that are not opaque are never batched.
+     */
+    @Test
+    public void checkFillRectangle2DBatchedWithAlpha() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setBatchRectFills(true);
+        g2.setPaint(Color.GREEN);
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+        g2.fillRect(10, 20, 30, 40);
+        g2.fillRect(20, 20, 30, 40);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<rect x='10.0' y='20.0' width='30.0' height='40.0' style='fill:rgb(0,255,0);fill-opacity:0.5'/>" +
+"<rect x='20.0' y='20.0' width='30.0' height='40.0' style='fill:rgb(0,255,0);fill-opacity:0.5'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * A shape that is repeated at different locations is written once as a
+     * symbol when shape instancing is enabled.
+     */
+    @Test
+    public void checkFillEllipse2DInstanced() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setDefsKeyPrefix("PRE");
+        g2.setShapeInstancing(true);
+        g2.setPaint(Color.RED);
+        g2.fill(new Ellipse2D.Double(10.0, 20.0, 4.0, 6.0));
+        g2.fill(new Ellipse2D.Double(30.0, 40.0, 4.0, 6.0));
+        g2.fill(new Ellipse2D.Double(50.0, 60.0, 4.0, 6.0));
+        g2.fill(new Ellipse2D.Double(50.0, 60.0, 8.0, 8.0));
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<defs><symbol id='PREsym-0' overflow='visible'><ellipse cx='2.0' cy='3.0' rx='2.0' ry='3.0' style='fill:rgb(255,0,0)'/></symbol></defs>" +
+"<ellipse cx='12.0' cy='23.0' rx='2.0' ry='3.0' style='fill:rgb(255,0,0)'/>" +
+"<use xlink:href='#PREsym-0' x='30.0' y='40.0'/><use xlink:href='#PREsym-0' x='50.0' y='60.0'/>" +
+"<ellipse cx='54.0' cy='64.0' rx='4.0' ry='4.0' style='fill:rgb(255,0,0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Shapes filled with a gradient are not instanced, since the gradient is
+     * defined in user space and would be translated with each instance.
+     */
+    @Test
+    public void checkGradientFillNotInstanced() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setShapeInstancing(true);
+        g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 100f, 0f, Color.BLUE));
+        g2.fill(new Ellipse2D.Double(10.0, 20.0, 4.0, 6.0));
+        g2.fill(new Ellipse2D.Double(80.0, 10.0, 4.0, 6.0));
+        String svg = g2.getSVGElement();
+        assertFalse(svg.contains("<use"));
+        assertFalse(svg.contains("<symbol"));
+    }
+
+    /**
+     * A shape that has been registered as a symbol keeps its symbol, even
+     * after many other shapes have been seen.
+     */
+    @Test
+    public void checkInstancedSymbolNotRegisteredTwice() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setShapeInstancing(true);
+        g2.setPaint(Color.RED);
+        for (int pass = 0; pass < 2; pass++) {
+            g2.fill(new Ellipse2D.Double(0.0, 0.0, 4.0, 6.0));
+            g2.fill(new Ellipse2D.Double(10.0, 0.0, 4.0, 6.0));
+            for (int i = 0; i < 300; i++) {
+                g2.fill(new Rectangle2D.Double(i, 0.0, 1.0, i + 1.0));
+            }
+        }
+        assertEquals(1, g2.getSVGElement().split("<symbol ", -1).length - 1);
+    }
+
+    /**
+     * Check that the number of symbols in a document is limited, and that
+     * markers are filled individually once the limit is reached.
+     */
+    @Test
+    public void checkSymbolCountLimited() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(Color.RED);
+        double[] xs = new double[] {5.0};
+        double[] ys = new double[] {6.0};
+        for (int i = 0; i <= SVGGraphics2D.MAX_SYMBOL_COUNT; i++) {
+            g2.drawMarkers(new Rectangle2D.Double(0.0, 0.0, 1.0, i + 1.0),
+                    xs, ys, 1);
+        }
+        String svg = g2.getSVGElement();
+        assertEquals(SVGGraphics2D.MAX_SYMBOL_COUNT,
+                svg.split("<symbol ", -1).length - 1);
+        assertEquals(SVGGraphics2D.MAX_SYMBOL_COUNT,
+                svg.split("<use ", -1).length - 1);
+        assertTrue(svg.endsWith("<path style='fill:rgb(255,0,0);stroke:none' d='M5.0,6.0L6.0,6.0L6.0,"
+                + (SVGGraphics2D.MAX_SYMBOL_COUNT + 7.0) + "L5.0,"
+                + (SVGGraphics2D.MAX_SYMBOL_COUNT + 7.0) + "L5.0,6.0Z'/></svg>"));
+    }
+
+    /**
+     * Check that round rectangles, arcs and polygons are written as native
+     * SVG elements.
+     */
+    @Test
+    public void checkNativeShapes() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(Color.RED);
+        g2.fillRoundRect(10, 20, 30, 40, 8, 100);
+        g2.fillArc(10, 20, 40, 20, 0, 90);
+        g2.drawArc(0, 0, 40, 20, 180, -270);
+        g2.fill(new Arc2D.Double(0, 0, 10, 10, 0, 360, Arc2D.CHORD));
+        g2.fill(new Polygon(new int[] {1, 5, 3}, new int[] {2, 2, 8}, 3));
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<rect x='10.0' y='20.0' width='30.0' height='40.0' rx='4.0' ry='20.0' style='fill:rgb(255,0,0)'/>" +
+"<path d='M30.0,30.0L50.0,30.0A20.0,10.0 0 0,0 30.0,20.0Z' style='fill:rgb(255,0,0)'/>" +
+"<path d='M0.0,9.999999999999998A20.0,10.0 0 1,1 20.0,20.0' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none'/>" +
+"<path d='M10.0,5.0A5.0,5.0 0 0,0 0.0,4.999999999999999A5.0,5.0 0 0,0 10.0,5.0Z' style='fill:rgb(255,0,0)'/>" +
+"<polygon fill-rule='evenodd' points='1,2 5,2 3,8' style='fill:rgb(255,0,0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that polylines and polygons from int arrays are written as
+     * native SVG elements.
+     */
+    @Test
+    public void checkPolylineAndPolygon() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(Color.RED);
+        int[] xPoints = {10, 20, 30, -5};
+        int[] yPoints = {40, 50, 45, 0};
+        g2.drawPolyline(xPoints, yPoints, 3);
+        g2.drawPolygon(xPoints, yPoints, 4);
+        g2.fillPolygon(xPoints, yPoints, 4);
+        g2.fillPolygon(xPoints, yPoints, 0);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<polyline points='10,40 20,50 30,45' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none'/>" +
+"<polygon fill-rule='evenodd' points='10,40 20,50 30,45 -5,0' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none'/>" +
+"<polygon fill-rule='evenodd' points='10,40 20,50 30,45 -5,0' style='fill:rgb(255,0,0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check the output from the bulk methods for series data.
+     */
+    @Test
+    public void checkBulkSeriesMethods() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setDefsKeyPrefix("PRE");
+        g2.setPaint(Color.RED);
+        double[] xs = {10.0, 20.5, 30.0};
+        double[] ys = {40.0, 50.0, 45.0};
+        g2.drawPolyline(xs, ys, 3);
+        g2.fillRects(new double[] {1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 0.0, 8.0,
+                9.0, 10.0, 11.0, 12.0}, 3);
+        g2.drawMarkers(new Rectangle2D.Double(-2.0, -2.0, 4.0, 4.0), xs, ys, 2);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<defs><symbol id='PREsym-0' overflow='visible'><rect x='-2.0' y='-2.0' width='4.0' height='4.0'/></symbol></defs>" +
+"<polyline points='10.0,40.0 20.5,50.0 30.0,45.0' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none'/>" +
+"<path style='fill:rgb(255,0,0)' d='M1.0 2.0h3.0v4.0h-3.0zM9.0 10.0h11.0v12.0h-11.0z'/>" +
+"<g style='fill:rgb(255,0,0)'><use xlink:href='#PREsym-0' x='10.0' y='40.0'/><use xlink:href='#PREsym-0' x='20.5' y='50.0'/></g></svg>", g2.getSVGElement());
+
+        // translucent rectangles are written individually
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(Color.RED);
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+        g2.fillRects(new double[] {1.0, 2.0, 3.0, 4.0}, 1);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g style='fill:rgb(255,0,0);fill-opacity:0.5'><rect x='1.0' y='2.0' width='3.0' height='4.0'/></g></svg>", g2.getSVGElement());
+
+        // no element is written if none of the rectangles is valid
+        g2 = new SVGGraphics2D(200, 100);
+        g2.fillRects(new double[] {1.0, 2.0, 0.0, 4.0, 5.0, 6.0, 7.0, -1.0}, 2);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'></svg>", g2.getSVGElement());
+
+        // markers with a gradient paint are filled individually
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 100f, 0f, Color.BLUE));
+        g2.drawMarkers(new Rectangle2D.Double(-2.0, -2.0, 4.0, 4.0), xs, ys, 2);
+        String svg = g2.getSVGElement();
+        assertFalse(svg.contains("<use"));
+        assertTrue(svg.contains("d='M8.0,38.0L12.0,38.0L12.0,42.0L8.0,42.0L8.0,38.0Z'"));
+        assertTrue(svg.contains("d='M18.5,48.0L22.5,48.0L22.5,52.0L18.5,52.0L18.5,48.0Z'"));
+    }
+
+    /**
+     * Check that a translation and uniform scale are applied to the
+     * coordinates when transform folding is enabled.
+     */
+    @Test
+    public void checkTransformFolding() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setDefsKeyPrefix("PRE");
+        g2.setTransformFolding(true);
+        g2.setPaint(Color.RED);
+        g2.translate(10, 20);
+        g2.scale(2.0, 2.0);
+        g2.clip(new Rectangle(0, 0, 5, 5));
+        g2.fillRect(1, 2, 3, 4);
+        g2.drawLine(1, 2, 3, 4);
+        g2.rotate(Math.PI / 2);
+        g2.fillRect(1, 2, 3, 4);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<defs><clipPath id='PREclip-0'><path d='M10.0,20.0L20.0,20.0L20.0,30.0L10.0,30.0L10.0,20.0Z'/></clipPath>" +
+"<clipPath id='PREclip-1'><path d='M0.0,0.0L0.0,-5.0L5.0,-5.0L5.0,0.0L0.0,0.0Z'/></clipPath></defs>" +
+"<rect x='12.0' y='24.0' width='6.0' height='8.0' style='fill:rgb(255,0,0)' clip-path='url(#PREclip-0)'/>" +
+"<line x1='12.0' y1='24.0' x2='16.0' y2='28.0' style='stroke-width:2.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0' clip-path='url(#PREclip-0)'/>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(255,0,0)' transform='matrix(0.0,2.0,-2.0,-0.0,10.0,20.0)' clip-path='url(#PREclip-1)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that transforms are written as groups when requested.
+     */
+    @Test
+    public void checkTransformGroups() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setTransformGroups(true);
+        g2.setPaint(Color.RED);
+        g2.fillRect(0, 0, 1, 1);
+        g2.translate(10, 20);
+        g2.fillRect(1, 2, 3, 4);
+        g2.fillOval(1, 2, 3, 4);
+        g2.translate(-10, -20);
+        g2.fillRect(0, 0, 1, 1);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/>" +
+"<g transform='translate(10.0,20.0)'>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(255,0,0)'/>" +
+"<ellipse cx='2.5' cy='4.0' rx='1.5' ry='2.0' style='fill:rgb(255,0,0)'/></g>" +
+"<rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that transform groups are nested to follow the transform calls,
+     * and that getting the SVG element does not close the open groups.
+     */
+    @Test
+    public void checkNestedTransformGroups() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setTransformGroups(true);
+        g2.setPaint(Color.RED);
+        AffineTransform saved = g2.getTransform();
+        g2.translate(10, 20);
+        g2.fillRect(0, 0, 1, 1);
+        g2.scale(2, 3);
+        g2.rotate(Math.PI / 2);
+        g2.fillRect(0, 0, 1, 1);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g transform='translate(10.0,20.0)'><rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/>" +
+"<g transform='scale(2.0,3.0) rotate(90.0)'><rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/></g></g></svg>", g2.getSVGElement());
+        g2.fillRect(1, 1, 1, 1);
+        g2.rotate(-Math.PI / 2);
+        g2.scale(0.5, 1.0 / 3.0);
+        g2.fillRect(2, 2, 1, 1);
+        g2.setTransform(saved);
+        g2.fillRect(3, 3, 1, 1);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g transform='translate(10.0,20.0)'><rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/>" +
+"<g transform='scale(2.0,3.0) rotate(90.0)'><rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/>" +
+"<rect x='1.0' y='1.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/></g>" +
+"<rect x='2.0' y='2.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/></g>" +
+"<rect x='3.0' y='3.0' width='1.0' height='1.0' style='fill:rgb(255,0,0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that the transform is not applied twice when transform folding
+     * and transform groups are both enabled.
+     */
+    @Test
+    public void checkTransformGroupsWithFolding() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setTransformGroups(true);
+        g2.setTransformFolding(true);
+        g2.setPaint(Color.RED);
+        g2.translate(10, 20);
+        g2.fill(new Rectangle2D.Double(1, 2, 3, 4));
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g transform='translate(10.0,20.0)'>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(255,0,0)'/></g></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that shared presentation attributes are hoisted into a group.
+     */
+    @Test
+    public void checkAttributeHoisting() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setAttributeHoisting(true);
+        g2.setPaint(Color.RED);
+        g2.fillRect(0, 0, 1, 1);
+        g2.fillOval(1, 2, 3, 4);
+        g2.fill(new Path2D.Double(new Rectangle(1, 1, 1, 1)));
+        g2.setPaint(Color.BLUE);
+        g2.fillRect(0, 0, 1, 1);
+        g2.fill(new Path2D.Double(new Rectangle(1, 1, 1, 1)));
+        g2.fill(new Path2D.Double(new Rectangle(2, 2, 1, 1)));
+        g2.drawString("A", 0, 0);
+        g2.fillRect(0, 0, 1, 1);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g style='fill:rgb(255,0,0)'><rect x='0.0' y='0.0' width='1.0' height='1.0'/><ellipse cx='2.5' cy='4.0' rx='1.5' ry='2.0'/></g>" +
+"<path style='fill:rgb(255,0,0);stroke:none' d='M1.0,1.0L2.0,1.0L2.0,2.0L1.0,2.0L1.0,1.0Z'/>" +
+"<rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(0,0,255)'/>" +
+"<g style='fill:rgb(0,0,255);stroke:none'><path d='M1.0,1.0L2.0,1.0L2.0,2.0L1.0,2.0L1.0,1.0Z'/><path d='M2.0,2.0L3.0,2.0L3.0,3.0L2.0,3.0L2.0,2.0Z'/></g>" +
+"<g><text x='0.0' y='0.0' style='fill: rgb(0,0,255); fill-opacity: 1.0; font-family: sans-serif; font-size: 12px;'>A</text></g>" +
+"<rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(0,0,255)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check the minified style properties.
+     */
+    @Test
+    public void checkMinifyStyles() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setMinifyStyles(true);
+        g2.setPaint(Color.RED);
+        g2.drawLine(1, 2, 3, 4);
+        g2.setStroke(new BasicStroke(2.5f));
+        g2.setPaint(new Color(18, 52, 86, 128));
+        g2.draw(new Rectangle(1, 2, 3, 4));
+        g2.fillRect(1, 2, 3, 4);
+        g2.setPaint(Color.WHITE);
+        g2.drawString("A", 0, 0);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<line x1='1.0' y1='2.0' x2='3.0' y2='4.0' style='stroke:#f00;stroke-linecap:square;stroke-miterlimit:10'/>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='stroke-width:2.5;stroke:#123456;stroke-opacity:.5019608;stroke-linecap:square;stroke-miterlimit:10;fill:none'/>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:#123456;fill-opacity:.5019608'/>" +
+"<g><text x='0.0' y='0.0' style='fill:#fff;font-family:sans-serif;font-size:12px'>A</text></g></svg>", g2.getSVGElement());
+
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setMinifyStyles(true);
+        g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_BUTT,
+                BasicStroke.JOIN_MITER, 4.5f));
+        g2.draw(new Rectangle(1, 2, 3, 4));
+        assertTrue(g2.getSVGElement().contains(";stroke-miterlimit:4.5;"));
+    }
+
+    /**
+     * Check that cached color strings follow the minified styles setting.
+     */
+    @Test
+    public void checkColorStringsWithMinifyStyles() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(new Color(1, 2, 3));
+        g2.fillRect(1, 2, 3, 4);
+        g2.setMinifyStyles(true);
+        g2.fillRect(1, 2, 3, 4);
+        g2.setMinifyStyles(false);
+        g2.fillRect(1, 2, 3, 4);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(1,2,3)'/>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:#010203'/>" +
+"<rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(1,2,3)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that invisible elements are skipped unless the hint says
+     * otherwise.
+     */
+    @Test
+    public void checkInvisibleElementsSkipped() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPaint(new Color(255, 0, 0, 0));
+        g2.fillRect(1, 2, 3, 4);
+        g2.drawString("A", 1, 2);
+        g2.setPaint(Color.RED);
+        g2.fill(new Line2D.Double(1, 2, 3, 2));
+        g2.setStroke(new BasicStroke(1.0f, BasicStroke.CAP_BUTT,
+                BasicStroke.JOIN_MITER));
+        g2.draw(new Line2D.Double(1, 2, 1, 2));
+        g2.setRenderingHint(SVGHints.KEY_ELEMENT_ID, "E1");
+        g2.fill(new Line2D.Double(1, 2, 3, 4));
+        g2.setRenderingHint(SVGHints.KEY_INVISIBLE_ELEMENTS,
+                SVGHints.VALUE_INVISIBLE_ELEMENTS_KEEP);
+        g2.draw(new Line2D.Double(1, 2, 1, 2));
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<path id='E1' style='fill:rgb(255,0,0);stroke:none' d='M1.0,2.0L3.0,4.0'/>" +
+"<line x1='1.0' y1='2.0' x2='1.0' y2='2.0' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-miterlimit:10.0'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that the invisible element check does not find the bounds of
+     * shapes other than rectangular shapes and lines (since that takes an
+     * extra pass over a large path).
+     */
+    @Test
+    public void checkInvisibleElementsShapeNotScanned() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        Path2D path = new Path2D.Double();
+        path.moveTo(1.0, 2.0);
+        path.lineTo(3.0, 4.0);
+        Shape shape = new Shape() {
+            @Override
+            public Rectangle getBounds() {
+                throw new IllegalStateException("Bounds not expected.");
+            }
+            @Override
+            public Rectangle2D getBounds2D() {
+                throw new IllegalStateException("Bounds not expected.");
+            }
+            @Override
+            public boolean contains(double x, double y) {
+                return path.contains(x, y);
+            }
+            @Override
+            public boolean contains(Point2D p) {
+                return path.contains(p);
+            }
+            @Override
+            public boolean intersects(double x, double y, double w, double h) {
+                return path.intersects(x, y, w, h);
+            }
+            @Override
+            public boolean intersects(Rectangle2D r) {
+                return path.intersects(r);
+            }
+            @Override
+            public boolean contains(double x, double y, double w, double h) {
+                return path.contains(x, y, w, h);
+            }
+            @Override
+            public boolean contains(Rectangle2D r) {
+                return path.contains(r);
+            }
+            @Override
+            public PathIterator getPathIterator(AffineTransform at) {
+                return path.getPathIterator(at);
+            }
+            @Override
+            public PathIterator getPathIterator(AffineTransform at,
+                    double flatness) {
+                return path.getPathIterator(at, flatness);
+            }
+        };
+        g2.draw(shape);
+        g2.fill(shape);
+        assertTrue(g2.getSVGElement().contains("d='M1.0,2.0L3.0,4.0'"));
+    }
+
+    /**
+     * Check that elements covered by a later opaque fill are removed when
+     * occlusion culling is enabled.
+     */
+    @Test
+    public void checkOcclusionCulling() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setOcclusionCulling(true);
+        g2.setBackground(Color.WHITE);
+        g2.setPaint(Color.RED);
+        g2.fillRect(10, 10, 10, 10);
+        g2.drawString("A", 5, 5);
+        g2.drawLine(50, 50, 60, 60);
+        g2.clearRect(0, 0, 200, 100);
+        g2.fillRect(10, 10, 10, 10);
+        g2.fillRect(100, 10, 10, 10);
+        g2.drawLine(10, 90, 20, 90);
+        g2.translate(5, 5);
+        g2.fillRect(0, 0, 40, 40);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g><text x='5.0' y='5.0' style='fill: rgb(255,0,0); fill-opacity: 1.0; font-family: sans-serif; font-size: 12px;'>A</text></g>" +
+"<rect x='0.0' y='0.0' width='200.0' height='100.0' style='fill:rgb(255,255,255)'/>" +
+"<rect x='100.0' y='10.0' width='10.0' height='10.0' style='fill:rgb(255,0,0)'/>" +
+"<line x1='10.0' y1='90.0' x2='20.0' y2='90.0' style='stroke-width:1.0;stroke:rgb(255,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0'/>" +
+"<rect x='0.0' y='0.0' width='40.0' height='40.0' style='fill:rgb(255,0,0)' transform='matrix(1.0,0.0,0.0,1.0,5.0,5.0)'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that filling an empty rectangle (with invisible elements kept)
+     * does not affect the occlusion culling of the next element.
+     */
+    @Test
+    public void checkOcclusionCullingAfterEmptyRect() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setOcclusionCulling(true);
+        g2.setRenderingHint(SVGHints.KEY_INVISIBLE_ELEMENTS,
+                SVGHints.VALUE_INVISIBLE_ELEMENTS_KEEP);
+        g2.setPaint(Color.RED);
+        g2.fill(new Rectangle2D.Double(30, 10, -20, 10));
+        g2.drawPolyline(new int[] {150, 190}, new int[] {80, 90}, 2);
+        g2.setBackground(Color.WHITE);
+        g2.clearRect(0, 0, 50, 50);
+        assertTrue(g2.getSVGElement().contains("<polyline"));
+    }
+
+    /**
+     * Check that a batch of rectangle fills is removed by occlusion culling
+     * when all of its rectangles are covered, and kept otherwise.
+     */
+    @Test
+    public void checkOcclusionCullingWithBatchedRectFills() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setOcclusionCulling(true);
+        g2.setBatchRectFills(true);
+        g2.setBackground(Color.WHITE);
+        g2.setPaint(Color.RED);
+        g2.fillRect(10, 10, 10, 10);
+        g2.fillRect(30, 10, 10, 10);
+        g2.clearRect(0, 0, 200, 100);
+        g2.setPaint(Color.BLUE);
+        g2.fillRect(10, 10, 10, 10);
+        g2.fillRect(150, 10, 10, 10);
+        g2.setBackground(Color.BLACK);
+        g2.clearRect(0, 0, 100, 100);
+        String svg = g2.getSVGElement();
+        assertFalse(svg.contains("rgb(255,0,0)"));
+        assertTrue(svg.contains("rgb(0,0,255)"));
+        assertTrue(svg.contains("rgb(0,0,0)"));
+    }
+
+    /**
+     * Check that only the most recent elements are tracked for occlusion
+     * culling, so the oldest elements are kept when the tracking limit is
+     * exceeded.
+     */
+    @Test
+    public void checkOcclusionCullingTrackingLimit() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setOcclusionCulling(true);
+        g2.setPaint(Color.RED);
+        g2.fillRect(10, 10, 10, 10);
+        g2.setPaint(Color.BLUE);
+        for (int i = 0; i < OcclusionCuller.MAX_ELEMENT_COUNT; i++) {
+            g2.drawLine(30, 10, 40, 20);
+        }
+        g2.setBackground(Color.WHITE);
+        g2.clearRect(0, 0, 200, 100);
+        String svg = g2.getSVGElement();
+        assertTrue(svg.contains("rgb(255,0,0)"));
+        int lineCount = svg.split("<line ", -1).length - 1;
+        assertTrue(lineCount > 0);
+        assertTrue(lineCount < OcclusionCuller.MAX_ELEMENT_COUNT);
+    }
+
+    /**
+     * Check that empty unnamed groups are removed and groups with no
+     * attributes are flattened when group optimization is enabled.
+     */
+    @Test
+    public void checkGroupOptimization() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setGroupOptimization(true);
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP, "G1");
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP, null);
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP, null);
+        g2.fillRect(1, 2, 3, 4);
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP,
+                Collections.singletonMap("class", "empty"));
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP, "G2");
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        g2.drawString("A", 1, 2);
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g id='G1'><rect x='1.0' y='2.0' width='3.0' height='4.0' style='fill:rgb(0,0,0)'/>" +
+"<g id='G2'></g>" +
+"<text x='1.0' y='2.0' style='fill: rgb(0,0,0); fill-opacity: 1.0; font-family: sans-serif; font-size: 12px;'>A</text></g></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that content-addressed ids make identical drawings produce
+     * identical output.
+     */
+    @Test
+    public void checkContentAddressedIds() {
+        String[] results = new String[2];
+        for (int i = 0; i < 2; i++) {
+            SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+            g2.setContentAddressedIds(true);
+            g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                    Color.BLUE));
+            g2.setClip(new Rectangle(0, 0, 50, 50));
+            g2.fillRect(1, 2, 3, 4);
+            g2.setClip(new Rectangle(0, 0, 60, 60));
+            g2.fillRect(1, 2, 3, 4);
+            results[i] = g2.getSVGElement();
+        }
+        assertEquals(results[0], results[1]);
+        assertTrue(results[0].contains("<clipPath id='_clip-"));
+        assertFalse(results[0].contains("_clip-0"));
+        assertTrue(results[0].contains("<linearGradient id='_gp"));
+    }
+
+    /**
+     * Check that the output digest matches a digest of the SVG element.
+     */
+    @Test
+    public void checkOutputDigest() throws Exception {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        g2.setOutputDigest(digest);
+        g2.setClip(new Rectangle(0, 0, 50, 50));
+        g2.drawString("\u00e9\ud83d\ude00", 1, 2);
+        String svg = g2.getSVGElement();
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(
+                svg.getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, digest.digest());
+    }
+
+    /**
+     * Check that gradients differing only in their cycle method get separate
+     * definitions, and that definitions are written in registration order.
+     */
+    @Test
+    public void checkGradientDefsRegistry() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setDefsKeyPrefix("_");
+        float[] fractions = new float[] { 0.0f, 1.0f };
+        Color[] colors = new Color[] { Color.RED, Color.BLUE };
+        RadialGradientPaint rgp = new RadialGradientPaint(5f, 5f, 5f,
+                fractions, colors);
+        g2.setPaint(rgp);
+        g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f, Color.BLUE));
+        g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f, Color.BLUE,
+                true));
+        assertEquals("_gp1", g2.gradientPaintRef);
+        g2.setPaint(Color.GREEN);
+        g2.setPaint(rgp);
+        assertEquals("_rgp0", g2.gradientPaintRef);
+        g2.setPaint(new RadialGradientPaint(5f, 5f, 5f, fractions, colors,
+                MultipleGradientPaint.CycleMethod.REPEAT));
+        assertEquals("_rgp1", g2.gradientPaintRef);
+        String svg = g2.getSVGElement();
+        assertTrue(svg.indexOf("id='_rgp0'") < svg.indexOf("id='_gp0'"));
+        assertTrue(svg.indexOf("id='_gp1'") < svg.indexOf("id='_rgp1'"));
+        assertTrue(svg.contains("<radialGradient id='_rgp1' gradientUnits='userSpaceOnUse' cx='5.0' cy='5.0' r='5.0' fx='5.0' fy='5.0' spreadMethod='repeat'>"));
+    }
+
+    /**
+     * Check that several instances can share the definitions in a library.
+     */
+    @Test
+    public void checkDefsLibrary() {
+        SVGDefsLibrary library = new SVGDefsLibrary("lib");
+        String[] results = new String[2];
+        for (int i = 0; i < 2; i++) {
+            SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+            g2.setDefsLibrary(library);
+            g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                    Color.BLUE));
+            g2.setClip(new Rectangle(0, 0, 50, 50));
+            g2.fill(new Rectangle(10, 20, 30, 40));
+            results[i] = g2.getSVGElement();
+        }
+        assertEquals(results[0], results[1]);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<rect x='10.0' y='20.0' width='30.0' height='40.0' style='fill:url(#libgp0)' clip-path='url(#libclip-0)'/></svg>", results[0]);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' width='0' height='0' style='position:absolute' aria-hidden='true'><defs>" +
+"<linearGradient id='libgp0' x1='0.0' y1='0.0' x2='10.0' y2='0.0' gradientUnits='userSpaceOnUse'><stop offset='0%' stop-color='rgb(255,0,0)'/><stop offset='100%' stop-color='rgb(0,0,255)'/></linearGradient>" +
+"<clipPath id='libclip-0'><path d='M0.0,0.0L50.0,0.0L50.0,50.0L0.0,50.0L0.0,0.0Z'/></clipPath></defs></svg>", library.getSVGElement());
+    }
+
+    /**
+     * Check that libraries with the default id prefix give the same ids to
+     * the same definitions, and that a sprite sheet can use a distinct
+     * prefix.
+     */
+    @Test
+    public void checkDefsLibraryDeterministicIds() {
+        String[] results = new String[2];
+        for (int i = 0; i < 2; i++) {
+            SVGDefsLibrary library = new SVGDefsLibrary();
+            SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+            g2.setDefsLibrary(library);
+            g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                    Color.BLUE));
+            g2.fill(new Rectangle(10, 20, 30, 40));
+            results[i] = library.getSVGElement();
+        }
+        assertEquals(results[0], results[1]);
+        assertTrue(results[0].contains("<linearGradient id='_libgp0'"));
+        assertEquals("sprites1", new SVGSpriteSheet("sprites1")
+                .getDefsLibrary().getIdPrefix());
+    }
+
+    /**
+     * Check that registering a clip path does not replace the paint that is
+     * remembered for the identity fast path.
+     */
+    @Test
+    public void checkDefsRegistryClipKeepsCachedPaint() {
+        DefsRegistry registry = new DefsRegistry();
+        GradientPaint gp = new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                Color.BLUE);
+        registry.add(gp, "gp-key", "gp", "gp0", "<linearGradient/>");
+        registry.add("clip-key", "clip-", "clip-0", "<clipPath/>");
+        assertEquals("clip-0", registry.getId("clip-key"));
+        assertEquals("gp0", registry.getCachedId(gp));
+        assertEquals(1, registry.getCount("gp"));
+        assertEquals(1, registry.getCount("clip-"));
+    }
+
+    /**
+     * Check that a report streams each SVG element and writes the shared
+     * definitions once.
+     */
+    @Test
+    public void checkReportWriter() throws IOException {
+        StringWriter out = new StringWriter();
+        SVGGraphics2D first;
+        try (SVGReportWriter report = new SVGReportWriter(out, "A & B")) {
+            first = report.createGraphics(20, 10);
+            first.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                    Color.BLUE));
+            first.fill(new Rectangle(1, 2, 3, 4));
+            String expected = first.getSVGElement();
+            report.write(first);
+            assertTrue(out.toString().endsWith("<body>\n" + expected + "\n"));
+            report.writeAll(Arrays.asList(report.createGraphics(20, 10),
+                    report.createGraphics(20, 10)));
+            report.write(() -> {
+                SVGGraphics2D g2 = report.createGraphics(20, 10);
+                g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 10f, 0f,
+                        Color.BLUE));
+                g2.fill(new Rectangle(5, 6, 7, 8));
+                return g2;
+            });
+            assertEquals(4, report.getCount());
+        }
+        String html = out.toString();
+        assertEquals("", first.getSVGElement().replaceAll("<svg[^>]*>|</svg>", ""));
+        assertTrue(html.contains("<title>A &amp; B</title>"));
+        assertEquals(1, html.split("<linearGradient ", -1).length - 1);
+        assertTrue(html.endsWith("</defs></svg>\n</body>\n</html>\n"));
+    }
+
+    /**
+     * Check that a sprite sheet writes each render as a symbol, with the
+     * definitions shared between symbols.
+     */
+    @Test
+    public void checkSpriteSheet() {
+        SVGSpriteSheet sprites = new SVGSpriteSheet();
+        for (int i = 0; i < 2; i++) {
+            SVGGraphics2D g2 = sprites.createGraphics(16, 8);
+            g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 16f, 0f,
+                    Color.BLUE));
+            g2.fill(new Rectangle(0, 0, 16, 8 - i));
+            sprites.add("icon" + i, g2);
+        }
+        assertEquals(2, sprites.getCount());
+        String prefix = sprites.getDefsLibrary().getIdPrefix();
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg'><defs>" +
+"<linearGradient id='" + prefix + "gp0' x1='0.0' y1='0.0' x2='16.0' y2='0.0' gradientUnits='userSpaceOnUse'><stop offset='0%' stop-color='rgb(255,0,0)'/><stop offset='100%' stop-color='rgb(0,0,255)'/></linearGradient></defs>" +
+"<symbol id='icon0' viewBox='0.0 0.0 16.0 8.0'><rect x='0.0' y='0.0' width='16.0' height='8.0' style='fill:url(#" + prefix + "gp0)'/></symbol>" +
+"<symbol id='icon1' viewBox='0.0 0.0 16.0 8.0'><rect x='0.0' y='0.0' width='16.0' height='7.0' style='fill:url(#" + prefix + "gp0)'/></symbol></svg>", sprites.getSVGElement());
+        SVGGraphics2D g2 = sprites.createGraphics(16, 8);
+        g2.fill(new Rectangle(0, 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> sprites.add("icon0", g2));
+        assertTrue(g2.getSVGElement().contains("<rect"));
+    }
+
+    /**
+     * Check that the sprite sheet declares the namespace for the
+     * {@code jfreesvg:ref} attribute written for group hints.
+     */
+    @Test
+    public void checkSpriteSheetWithGroupRef() {
+        SVGSpriteSheet sprites = new SVGSpriteSheet();
+        SVGGraphics2D g2 = sprites.createGraphics(16, 8);
+        g2.setRenderingHint(SVGHints.KEY_BEGIN_GROUP,
+                Collections.singletonMap("ref", "item1"));
+        g2.fill(new Rectangle(0, 0, 1, 1));
+        g2.setRenderingHint(SVGHints.KEY_END_GROUP, null);
+        sprites.add("icon0", g2);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg'>" +
+"<symbol id='icon0' viewBox='0.0 0.0 16.0 8.0'><g jfreesvg:ref='item1'><rect x='0.0' y='0.0' width='1.0' height='1.0' style='fill:rgb(0,0,0)'/></g></symbol></svg>", sprites.getSVGElement());
+    }
+
+    /**
+     * Check that paths can still be wrapped in a group for compatibility.
+     */
+    @Test
+    public void checkPathGroupWrapping() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPathGroupWrapping(true);
+        Path2D path = new Path2D.Double();
+        path.moveTo(10.0, 20.0);
+        path.lineTo(30.0, 40.0);
+        g2.draw(path);
+        g2.fill(path);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<g style='stroke-width:1.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none'><path d='M10.0,20.0L30.0,40.0'/></g>" +
+"<g style='fill:rgb(0,0,0);stroke:none'><path d='M10.0,20.0L30.0,40.0'/></g></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that the coordinates of a {@code Path2D.Double} are written in
+     * double precision.
+     */
+    @Test
+    public void checkFillPath2DDoublePrecision() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        Path2D path = new Path2D.Double();
+        path.moveTo(19.9, 0.1);
+        path.lineTo(12345678.9, 20.3);
+        path.lineTo(19.9, 20.3);
+        path.closePath();
+        g2.fill(path);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<path style='fill:rgb(0,0,0);stroke:none' d='M19.9,0.1L1.23456789E7,20.3L19.9,20.3Z'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check the compact format for path data.
+     */
+    @Test
+    public void checkDrawPath2DCompact() {
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setCompactPathData(true);
+        Path2D path = new Path2D.Double();
+        path.moveTo(10.0, 20.0);
+        path.lineTo(30.0, 20.0);
+        path.lineTo(30.0, 25.0);
+        path.lineTo(31.5, 26.5);
+        path.lineTo(33.0, 28.0);
+        path.lineTo(10.0, 0.5);
+        path.closePath();
+        path.lineTo(12.0, 20.0);
+        g2.draw(path);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<path style='stroke-width:1.0;stroke:rgb(0,0,0);stroke-opacity:1.0;stroke-linecap:square;stroke-miterlimit:10.0;fill:none' d='M10 20H30v5l1.5 1.5L33 28 10 .5Zh2'/></svg>", g2.getSVGElement());
+    }
+
+    /**
+     * Check that path simplification drops points within the tolerance,
+     * measured in device pixels.
+     */
+    @Test
+    public void checkDrawPath2DSimplified() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0.0, 20.0);
+        for (int i = 1; i < 100; i++) {
+            path.lineTo(i, 20.0 + (i % 2 == 0 ? 0.1 : -0.1));
+        }
+        path.lineTo(100.0, 20.0);
+        path.lineTo(100.0, 50.0);
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setPathSimplificationTolerance(0.5);
+        g2.fill(path);
+        assertEquals("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink' xmlns:jfreesvg='https://www.jfree.org/jfreesvg/svg' width='200.0' height='100.0'>" +
+"<path style='fill:rgb(0,0,0);stroke:none' d='M0.0,20.0L100.0,20.0L100.0,50.0'/></svg>", g2.getSVGElement());
+
+        // with a scale of 10, the jitter is outside the tolerance
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setPathSimplificationTolerance(0.5);
+        g2.scale(10.0, 10.0);
+        g2.fill(path);
+        assertEquals(102, g2.getSVGElement().split("L").length);
+    }
+
+    /**
+     * Check that the data for a large path is the same when it is written
+     * in parallel.
+     */
+    @Test
+    public void checkDrawPath2DParallel() {
+        Path2D path = new Path2D.Double();
+        for (int i = 0; i < 100000; i++) {
+            if (i % 1000 == 0) {
+                path.moveTo(i, 0.0);
+            } else if (i % 1000 == 999) {
+                path.closePath();
+            } else {
+                path.lineTo(i, i % 7);
+            }
+        }
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.draw(path);
+        String expected = g2.getSVGElement();
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setParallelPathThreshold(1000);
+        g2.draw(path);
+        assertEquals(expected, g2.getSVGElement());
+    }
+
+    /**
+     * Check that compact path data written in parallel describes the same
+     * geometry as compact path data written sequentially (the segments at
+     * the chunk boundaries are written in absolute form, so the strings can
+     * differ).
+     */
+    @Test
+    public void checkDrawPath2DCompactParallel() {
+        Path2D path = new Path2D.Double();
+        for (int i = 0; i < 100000; i++) {
+            if (i % 5000 == 0) {
+                path.moveTo(i, 0.0);
+            } else if (i % 5000 == 4999) {
+                path.closePath();
+            } else if (i % 3 == 0) {
+                path.quadTo(i - 0.5, i % 11, i, i % 7);
+            } else {
+                path.lineTo(i, i % 2 == 0 ? 0.0 : i % 13);
+            }
+        }
+        SVGGraphics2D g2 = new SVGGraphics2D(200, 100);
+        g2.setCompactPathData(true);
+        g2.draw(path);
+        double[] expected = parsePathData(g2.getSVGElement());
+        g2 = new SVGGraphics2D(200, 100);
+        g2.setCompactPathData(true);
+        g2.setParallelPathThreshold(1000);
+        g2.draw(path);
+        assertArrayEquals(expected, parsePathData(g2.getSVGElement()), 1e-9);
+    }
+
+    /**
+     * Returns the absolute coordinates of the points (including control
+     * points) in the path data of the first {@code d} attribute in the SVG,
+     * with each close-path segment recorded as a pair of {@code NaN} values.
+     *
+     * @param svg  the SVG.
+     *
+     * @return The coordinates.
+     */
+    private static double[] parsePathData(String svg) {
+        int start = svg.indexOf(" d='") + 4;
+        String d = svg.substring(start, svg.indexOf('\'', start));
+        java.util.regex.Matcher m = java.util.regex.Pattern.compile(
+                "[MmLlHhVvQqCcZz]|-?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?")
+                .matcher(d);
+        java.util.List<String> tokens = new java.util.ArrayList<>();
+        while (m.find()) {
+            tokens.add(m.group());
+        }
+        java.util.List<Double> result = new java.util.ArrayList<>();
+        double cx = 0.0, cy = 0.0, sx = 0.0, sy = 0.0;
+        char cmd = 0;
+        int i = 0;
+        while (i < tokens.size()) {
+            String t = tokens.get(i);
+            if (Character.isLetter(t.charAt(0))) {
+                cmd = t.charAt(0);
+                i++;
+                if (cmd == 'Z' || cmd == 'z') {
+                    cx = sx;
+                    cy = sy;
+                    result.add(Double.NaN);
+                    result.add(Double.NaN);
+                    continue;
+                }
+            }
+            boolean rel = Character.isLowerCase(cmd);
+            double ox = rel ? cx : 0.0;
+            double oy = rel ? cy : 0.0;
+            switch (Character.toUpperCase(cmd)) {
+                case 'H':
+                    cx = ox + Double.parseDouble(tokens.get(i++));
+                    break;
+                case 'V':
+                    cy = oy + Double.parseDouble(tokens.get(i++));
+                    break;
+                default:
+                    int n = Character.toUpperCase(cmd) == 'Q' ? 2
+                            : Character.toUpperCase(cmd) == 'C' ? 3 : 1;
+                    for (int k = 0; k < n; k++) {
+                        double x = ox + Double.parseDouble(tokens.get(i++));
+                        double y = oy + Double.parseDouble(tokens.get(i++));
+                        if (k < n - 1) {
+                            result.add(x);
+                            result.add(y);
+                        } else {
+                            cx = x;
+                            cy = y;
+                        }
+                    }
+                    break;
+            }
+            if (cmd == 'M' || cmd == 'm') {
+                sx = cx;
+                sy = cy;
+                cmd = cmd == 'M' ? 'L' : 'l';
+            }
+            result.add(cx);
+            result.add(cy);
+        }
+        return result.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
     /**
      * Check the output for drawing a string.
      */